@@ -3,14 +3,23 @@
  * AVLTree
  *
  * An implementation of a AVL Tree with
- * distinct integer keys and info
+ * distinct integer keys and info.
+ * In multiset mode a key can be inserted several times,
+ * each node counts the occurrences of its key.
  *
  */
 
-public class AVLTree {
+public class AVLTree implements SearchTree {
 	private IAVLNode root;
 	private IAVLNode min;
 	private IAVLNode max;
+	private Monoid monoid;
+	private boolean multiset;
+	private AVLTreeMetrics metrics;
+	private int rebalanceBudget;
+	private int deferred;
+	private ChangeFeed changeFeed;
+	private ValueArena arena;
 
 	/**
 	 *  Complexity: O(1)
@@ -21,6 +30,68 @@ public class AVLTree {
 		this.max = null;
 	}
 
+	/**
+	 * public AVLTree(Monoid monoid)
+	 * creates an empty tree in which every node also keeps the
+	 * aggregate of its subtree under the given monoid
+	 * (see aggregate, aggregateByRank).
+	 * Complexity: O(1)
+	 */
+	public AVLTree(Monoid monoid) {
+		this(monoid, false);
+	}
+
+	/**
+	 * public AVLTree(boolean multiset)
+	 * creates an empty tree, in multiset mode if multiset is true.
+	 * in multiset mode inserting an existing key adds one to its node's count,
+	 * and deleting it removes one, without structural changes.
+	 * size, treeSelect, rank and keysToArray count every occurrence.
+	 * Complexity: O(1)
+	 */
+	public AVLTree(boolean multiset) {
+		this(null, multiset);
+	}
+
+	/**
+	 * public AVLTree(Monoid monoid, boolean multiset)
+	 * creates an empty tree with a monoid (may be null), in multiset mode if multiset is true.
+	 * Complexity: O(1)
+	 */
+	public AVLTree(Monoid monoid, boolean multiset) {
+		this();
+		this.monoid = monoid;
+		this.multiset = multiset;
+	}
+
+	/**
+	 * public AVLTree(ValueArena arena)
+	 * creates an empty tree that keeps its infos in a value arena (which can be
+	 * shared by several trees used from one thread at a time, as the arena is
+	 * not thread safe): a node holds the handle of its deduplicated
+	 * UTF-8 info instead of a String, the handle is released when the node is
+	 * deleted, and a String is only made when an info is read.
+	 * Complexity: O(1)
+	 */
+	public AVLTree(ValueArena arena) {
+		this();
+		this.arena = arena;
+	}
+
+	/**
+	 * public AVLTree(int[] keys, String[] infos)
+	 * creates a perfectly balanced tree of the items keys[j], infos[j] in
+	 * array order: sorted by key for a search tree, or in list order for a
+	 * tree used by rank (Tree list).
+	 * @pre keys.length == infos.length
+	 * Complexity: O(n)
+	 */
+	public AVLTree(int[] keys, String[] infos) {
+		this();
+		this.root = buildBalanced(keys, infos, 0, keys.length);
+		resetMinMax();
+	}
+
 	/**
 	 * public boolean empty()
 	 * returns true if and only if the tree is empty
@@ -38,10 +109,102 @@ public class AVLTree {
 	 */
 	public String search(int k)
 	{
+		boolean timed = AVLTreeMetrics.ENABLED && this.metrics != null;
+		long start = timed ? System.nanoTime() : 0L;
 		IAVLNode n = findNode(k);
 		String toReturn = n == null ? null : n.getValue();
+		if (timed) this.metrics.recordSearch(System.nanoTime() - start);
 		return toReturn;
 	}
+
+	/**
+	 * public void multiGet(int[] keys, String[] results)
+	 * looks up all the keys at once: results[j] is set to search(keys[j]).
+	 * the keys are sorted (if they are not already) and resolved by splitting
+	 * the sorted range at every node on the way down, so a subtree is entered
+	 * once for all the keys that fall in it. no allocation per key.
+	 * @pre results.length >= keys.length
+	 * Complexity: O(m log(n/m) + m log m) for m keys, O(m log(n/m)) if sorted
+	 */
+	public void multiGet(int[] keys, String[] results) {
+		int m = keys.length;
+		boolean sorted = true;
+		for (int j = 1; j < m && sorted; j++) {
+			sorted = keys[j - 1] <= keys[j];
+		}
+		if (sorted) {
+			multiGetSorted(keys, 0, m, results);
+			return;
+		}
+		// sort the positions by key: the key in the high half, its position in the low half
+		long[] order = new long[m];
+		for (int j = 0; j < m; j++) {
+			order[j] = ((long) keys[j] << 32) | j;
+		}
+		java.util.Arrays.sort(order);
+		int[] sortedKeys = new int[m];
+		for (int j = 0; j < m; j++) {
+			sortedKeys[j] = (int) (order[j] >> 32);
+			order[j] = (int) order[j];
+		}
+		multiGetSorted(sortedKeys, 0, m, results);
+		// move every result from its sorted position to its key's position,
+		// one permutation cycle at a time, marking done positions with -1
+		for (int j = 0; j < m; j++) {
+			if (order[j] < 0) continue;
+			String carry = results[j];
+			int target = (int) order[j];
+			order[j] = -1;
+			while (target != j) {
+				String next = results[target];
+				results[target] = carry;
+				carry = next;
+				int following = (int) order[target];
+				order[target] = -1;
+				target = following;
+			}
+			results[j] = carry;
+		}
+	}
+
+	/**
+	 * public void multiGetSorted(int[] keys, int from, int to, String[] results)
+	 * like multiGet for the sorted keys[from..to), results go to results[from..to)
+	 * @pre keys[from..to) is sorted in non decreasing order
+	 * Complexity: O(m log(n/m)) for m keys
+	 */
+	public void multiGetSorted(int[] keys, int from, int to, String[] results) {
+		recMultiGet(this.root, keys, from, to, results);
+	}
+
+	/**
+	 * private void recMultiGet(IAVLNode node, int[] keys, int from, int to, String[] results)
+	 * resolves the sorted keys[from..to) in node's subtree: the node's key
+	 * splits the range, the smaller keys go left and the bigger keys go right
+	 * Complexity: O(m log(n/m)) for m keys
+	 */
+	private void recMultiGet(IAVLNode node, int[] keys, int from, int to, String[] results) {
+		if (from >= to) return;
+		if (node == null) {
+			java.util.Arrays.fill(results, from, to, null);
+			return;
+		}
+		int k = node.getKey();
+		// first index with a key >= k
+		int lo = from;
+		int hi = to;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (keys[mid] < k) lo = mid + 1;
+			else hi = mid;
+		}
+		int end = lo;
+		while (end < to && keys[end] == k) {
+			results[end++] = node.getValue();
+		}
+		recMultiGet(node.getLeft(), keys, from, lo, results);
+		recMultiGet(node.getRight(), keys, end, to, results);
+	}
 	
 	/**
 	 * public String min()
@@ -95,12 +258,26 @@ public class AVLTree {
 		return infoArr;
 	}
 	
+	/**
+	 * public int toArrays(int[] keysArr, String[] infoArr)
+	 * fills keysArr and infoArr with all the keys and their info, sorted by key,
+	 * in a single traversal. returns the number of items written.
+	 * see ParallelTreeExport for a parallel export.
+	 * @pre keysArr.length >= size() and infoArr.length >= size()
+	 * Complexity: O(n)
+	 */
+	public int toArrays(int[] keysArr, String[] infoArr)
+	{
+		return recToArray(this.root, keysArr, infoArr, 0, "b");
+	}
+
 	/** 
 	 * private int recToArray(IAVLNode node, int[] keysArr, String[] infoArr, int index, String mode)
 	 *  node - the node to start the inorder travel
 	 *  keysArr / infoArr - the array to fill
 	 *  index - the index from which to start inserting items to the array
-	 *  mode - "i" for info or "k" for keys
+	 *  mode - "i" for info, "k" for keys or "b" for both
+	 *  in multiset mode an item is written once for every occurrence.
 	 *  returns the first index that is free in the array.
 	 *  Complexity: O(n)
 	 */
@@ -109,10 +286,15 @@ public class AVLTree {
 			return index;
 		} else {
 			index = recToArray(node.getLeft(), keysArr, infoArr, index, mode);
-			if (mode.equals("k")) {
-				keysArr[index++] = node.getKey();
-			} else {
-				infoArr[index++] = node.getValue();
+			for (int c = getCount(node); c > 0; c--) {
+				if (mode.equals("k")) {
+					keysArr[index++] = node.getKey();
+				} else if (mode.equals("i")) {
+					infoArr[index++] = node.getValue();
+				} else {
+					keysArr[index] = node.getKey();
+					infoArr[index++] = node.getValue();
+				}
 			}
 			index = recToArray(node.getRight(), keysArr, infoArr, index, mode);
 		}
@@ -146,20 +328,49 @@ public class AVLTree {
 	 * the tree must remain valid (keep its invariants).
 	 * returns the number of rebalancing operations, or 0 if no rebalancing operations were necessary.
 	 * returns -1 if an item with key k already exists in the tree.
+	 * in multiset mode an existing key's count is increased (its info is kept)
+	 * and 0 is returned.
+	 * with a rebalance budget the rotations are counted when they are made:
+	 * see setRebalanceBudget.
 	 * Complexity: O(logn)
 	 */
 	public int insert(int k, String i) {
+		int result;
+		if (AVLTreeMetrics.ENABLED && this.metrics != null) {
+			long start = System.nanoTime();
+			result = insertKey(k, i);
+			this.metrics.recordInsert(System.nanoTime() - start);
+		} else {
+			result = insertKey(k, i);
+		}
+		if (this.changeFeed != null && result != -1) this.changeFeed.publish(ChangeFeed.INSERT, k, rank(k) - 1, i);
+		return result;
+	}
+
+	/**
+	 * private int insertKey(int k, String i)
+	 * the insert itself, see insert
+	 * Complexity: O(logn)
+	 */
+	private int insertKey(int k, String i) {
 		IAVLNode y = null;
 		IAVLNode x = this.root;
+		int depth = 0;
 		while (x != null) {
 			y = x;
+			depth++;
 			if (k == x.getKey()) {
-				return -1;
+				recordPathLength(depth);
+				if (!this.multiset) return -1;
+				((AVLNode)x).setCount(getCount(x) + 1);
+				updateSizeOnPathToRoot(x, "i");
+				return 0;
 			}
 			else if (k < x.getKey()) x = x.getLeft();
 			else x = x.getRight();	
 		}
 		IAVLNode newNode = new AVLNode (k,i);
+		if (this.monoid != null) updateAggregate(newNode);
 		updateMinMax(newNode, "i"); // checks if new node is min or max
 		newNode.setParent(y);
 		//empty tree
@@ -174,6 +385,7 @@ public class AVLTree {
 			y.setRight(newNode);
 		}
 		}
+		recordPathLength(depth);
 		updateSizeOnPathToRoot(y, "i");
 		int numOfRotations = fixInsert(y);
 		return numOfRotations;
@@ -184,13 +396,16 @@ public class AVLTree {
 	 * private int fixInsert(IAVLNode parent)
 	 * go up from the parent of the inserted node
 	 * to the root and look for a criminal.
-	 * fix it if found.
+	 * fix it if found. with a rebalance budget the fix is deferred.
 	 * returns the num of rotations needed to fix the criminal.
 	 * Complexity: O(logn) 
 	 */
 	private int fixInsert(IAVLNode parent) {
+		if (this.rebalanceBudget > 0) return deferFix(parent);
 		int numOfRotations = 0;
+		int climbed = 0;
 		while (parent != null) {
+			climbed++;
 			int prevHeight = parent.getHeight();
 			int newHeight = updateHeight(parent);
 			boolean heightChanged = (prevHeight != newHeight);
@@ -205,6 +420,7 @@ public class AVLTree {
 				break;
 			}
 		}
+		recordClimb(climbed);
 		return numOfRotations;
 	}
 	
@@ -215,16 +431,66 @@ public class AVLTree {
 	 * the tree must remain valid (keep its invariants).
 	 * returns the number of rebalancing operations, or 0 if no rebalancing operations were needed.
 	 * returns -1 if an item with key k was not found in the tree.
+	 * in multiset mode a key with count > 1 only has its count decreased.
+	 * with a rebalance budget the rotations are counted when they are made:
+	 * see setRebalanceBudget.
 	 * Complexity: O(logn)
 	 */
 	public int delete(int k) {
+		// the deleted item's info and position, for the change feed
+		IAVLNode deleted = (this.changeFeed == null) ? null : findNode(k, false);
+		int position = (deleted == null) ? -1 : rank(k) - 1;
+		String deletedInfo = (deleted == null) ? null : deleted.getValue();
+		int result;
+		if (AVLTreeMetrics.ENABLED && this.metrics != null) {
+			long start = System.nanoTime();
+			result = deleteKey(k);
+			this.metrics.recordDelete(System.nanoTime() - start);
+		} else {
+			result = deleteKey(k);
+		}
+		if (deleted != null) this.changeFeed.publish(ChangeFeed.DELETE, k, position, deletedInfo);
+		return result;
+	}
+
+	/**
+	 * private int deleteKey(int k)
+	 * the delete itself, see delete
+	 * Complexity: O(logn)
+	 */
+	private int deleteKey(int k) {
 		IAVLNode nodeToDelete = findNode(k);
 		if (nodeToDelete == null) return -1;
+		if (decreaseCount(nodeToDelete)) return 0;
 		updateMinMax(nodeToDelete, "d");
 		
 		return deleteNode(nodeToDelete);
 	}
 	
+	/**
+	 * private boolean decreaseCount(IAVLNode node)
+	 * in multiset mode, if the node's count is more than 1 removes one occurrence
+	 * and returns true. otherwise returns false and the node should be deleted.
+	 * Complexity: O(logn)
+	 */
+	private boolean decreaseCount(IAVLNode node) {
+		if (!this.multiset || getCount(node) == 1) return false;
+		((AVLNode)node).setCount(getCount(node) - 1);
+		updateSizeOnPathToRoot(node, "d");
+		return true;
+	}
+
+	/**
+	 * public int count(int k)
+	 * returns the number of occurrences of key k in the tree
+	 * (at most 1 unless in multiset mode)
+	 * Complexity: O(logn)
+	 */
+	public int count(int k) {
+		IAVLNode n = findNode(k);
+		return n == null ? 0 : getCount(n);
+	}
+
 	/**
 	 * private IAVLNode deleteLeaf(IAVLNode node)
 	 * deletes a leaf and returns the deleted node's father
@@ -356,13 +622,17 @@ public class AVLTree {
 	
 	/**
 	 * private int fixDelete(IAVLNode y)
-	 * Balances the tree to be a valid AVL Tree
+	 * Balances the tree to be a valid AVL Tree,
+	 * or defers it when the tree has a rebalance budget
 	 *  Complexity: O(logn)
 	 */
 	private int fixDelete(IAVLNode y) {
+		if (this.rebalanceBudget > 0) return deferFix(y);
 		int numOfRotations = 0;
+		int climbed = 0;
 		IAVLNode originalParent;
 		while (y != null) {
+			climbed++;
 			originalParent = y.getParent();
 			int prevHeight = y.getHeight();
 			int newHeight = updateHeight(y);
@@ -378,6 +648,7 @@ public class AVLTree {
 				y = originalParent;
 			}
 		}
+		recordClimb(climbed);
 		return numOfRotations; 
 	}
 	
@@ -386,6 +657,7 @@ public class AVLTree {
 	 *deletes node to delete with the suitable delete function
 	 *updates size field of nodes after delete
 	 *fixes tree to be avl tree with fixDlete function
+	 *releases the node's value if the tree has a value arena
 	 * Complexity: O(logn)
 	 */
 	private int deleteNode(IAVLNode nodeToDelete) {
@@ -404,6 +676,7 @@ public class AVLTree {
 			else startFix = deleteNodeWithRightSon(nodeToDelete);
 		}
 		updateSizeOnPathToRoot(startFix, "d");
+		if (this.arena != null) this.arena.release(((AVLNode)nodeToDelete).getHandle());
 		int numOfRotations = fixDelete(startFix);
 		return numOfRotations;
 	}
@@ -442,9 +715,13 @@ public class AVLTree {
 		
 		((AVLNode)y).setSize(((AVLNode)x).getSize());
 	
-		((AVLNode)x).setSize(getSizeNull(x.getLeft()) + getSizeNull(x.getRight()) + 1);
+		((AVLNode)x).setSize(getSizeNull(x.getLeft()) + getSizeNull(x.getRight()) + getCount(x));
 		updateHeight(x);
 		updateHeight(y);
+		if (this.monoid != null) {
+			updateAggregate(x);
+			updateAggregate(y);
+		}
 	}
 	
 
@@ -481,10 +758,14 @@ public class AVLTree {
 		x.setParent(y);
 		
 		((AVLNode)y).setSize(((AVLNode)x).getSize());
-		((AVLNode)x).setSize(getSizeNull(x.getLeft()) + getSizeNull(x.getRight()) + 1);
+		((AVLNode)x).setSize(getSizeNull(x.getLeft()) + getSizeNull(x.getRight()) + getCount(x));
 		
 		updateHeight(x);
 		updateHeight(y);
+		if (this.monoid != null) {
+			updateAggregate(x);
+			updateAggregate(y);
+		}
 	}
 	
 	/**
@@ -536,10 +817,12 @@ public class AVLTree {
 			case 0:	
 				// right rotation
 				rotateRight(criminal);
+				recordRotation(false);
 				return 1;
 			case -1:
 				// left right rotation
 				rotateLeftRight(criminal);
+				recordRotation(true);
 				return 2;
 			}
 			break;
@@ -549,11 +832,13 @@ public class AVLTree {
 			case 1:
 				// right left rotation
 				rotateRightLeft(criminal);
+				recordRotation(true);
 				return 2;
 			case -1:
 			case 0:	
 				// left rotation
 				rotateLeft(criminal);
+				recordRotation(false);
 				return 1;
 			}
 		}
@@ -629,15 +914,29 @@ public class AVLTree {
 	 * Complexity: O(logn)
 	 */
 	public IAVLNode findNode (int k) {
+		return findNode(k, true);
+	}
+
+	/**
+	 * private IAVLNode findNode(int k, boolean record)
+	 * findNode, recording the path length only if record is true
+	 * (false for the tree's own lookups inside another operation)
+	 * Complexity: O(logn)
+	 */
+	private IAVLNode findNode(int k, boolean record) {
 		if (this.empty()) return null;
 		IAVLNode x = this.root;
+		int depth = 0;
 		while (x != null) {
+			depth++;
 			if (k == x.getKey()) {
+				if (record) recordPathLength(depth);
 				return x;
 			}
 			else if (k < x.getKey()) x = x.getLeft();
 			else x = x.getRight();	
 		}
+		if (record) recordPathLength(depth);
 		return null;
 	}
 
@@ -667,6 +966,15 @@ public class AVLTree {
 		return newHeight;
 	}
 	
+	/**
+	 * private int getCount(IAVLNode n)
+	 * returns the number of occurrences of a node's key
+	 * Complexity: O(1)
+	 */
+	private int getCount(IAVLNode n) {
+		return ((AVLNode)n).getCount();
+	}
+
 	/**
 	 * private int getHeightWithNull(IAVLNode n)
 	 * if a node is null, returns -1 as height
@@ -696,6 +1004,9 @@ public class AVLTree {
 	 *  to the root
 	 *  n is the father of the inserted node
 	 *  mode is a string representing insert or delet mode
+	 *  when the tree has a monoid, the aggregates on the path are recomputed too
+	 *  in multiset mode the sizes are recomputed from the sons and counts, since a
+	 *  successor that replaces a deleted node may carry more than one occurrence
 	 *  Complexity: O(logn)
 	 */
 	private void updateSizeOnPathToRoot(IAVLNode n, String mode) {
@@ -704,7 +1015,12 @@ public class AVLTree {
 		// else subtract 1
 		int toAdd = (mode.equals("i")) ? 1 : -1;
 		while (y != null) {
-			((AVLNode)y).setSize(((AVLNode)y).getSize() + toAdd);
+			if (this.multiset) {
+				((AVLNode)y).setSize(getSizeNull(y.getLeft()) + getSizeNull(y.getRight()) + getCount(y));
+			} else {
+				((AVLNode)y).setSize(((AVLNode)y).getSize() + toAdd);
+			}
+			if (this.monoid != null) updateAggregate(y);
 			y = y.getParent();
 		}
 	}
@@ -755,6 +1071,20 @@ public class AVLTree {
 	 * Complexity: O(logn)
 	 */
 	public IAVLNode treeSelect(int rank) {
+		boolean timed = AVLTreeMetrics.ENABLED && this.metrics != null;
+		long start = timed ? System.nanoTime() : 0L;
+		IAVLNode node = recTreeSelect(this.root, rank);
+		if (timed) this.metrics.recordSelect(System.nanoTime() - start);
+		return node;
+	}
+
+	/**
+	 * IAVLNode selectNode(int rank)
+	 * treeSelect without recording metrics, for lookups by rank made
+	 * inside other operations (of this tree or of the lists built on it)
+	 * Complexity: O(logn)
+	 */
+	IAVLNode selectNode(int rank) {
 		return recTreeSelect(this.root, rank);
 	}
 	
@@ -762,15 +1092,55 @@ public class AVLTree {
 	 * private IAVLNode recTreeSelect(IAVLNode node, int rank)
 	 * recursive function used to find a node in the tree with
 	 * the given rank.
+	 * in multiset mode a node holds the ranks of all the occurrences of its key.
 	 * Complexity: O(logn)
 	 */
 	private IAVLNode recTreeSelect(IAVLNode node, int rank) {
-		int counter = getSizeNull(node.getLeft()) + 1;
-		if (rank == counter) return node;
-		else {
-			if (rank < counter) return recTreeSelect(node.getLeft(), rank);
-			else return recTreeSelect(node.getRight(), rank - counter);
+		int leftSize = getSizeNull(node.getLeft());
+		if (rank <= leftSize) return recTreeSelect(node.getLeft(), rank);
+		int counter = leftSize + getCount(node);
+		if (rank <= counter) return node;
+		else return recTreeSelect(node.getRight(), rank - counter);
+	}
+
+	/**
+	 * public int rank(int k)
+	 * returns the number of keys in the tree that are smaller than or equal to k.
+	 * if k is in the tree, treeSelect(rank(k)) is its node.
+	 * Complexity: O(logn)
+	 */
+	public int rank(int k) {
+		int rank = 0;
+		IAVLNode x = this.root;
+		while (x != null) {
+			if (k < x.getKey()) {
+				x = x.getLeft();
+			} else {
+				rank += getSizeNull(x.getLeft()) + getCount(x);
+				if (k == x.getKey()) break;
+				x = x.getRight();
+			}
 		}
+		return rank;
+	}
+
+	/**
+	 * public int rankOfNode(IAVLNode node)
+	 * returns the rank of a node in the tree (1 is the first item, as in
+	 * treeSelect; the node's last occurrence in multiset mode), found by
+	 * climbing the parent pointers, so it also works for a tree used by rank.
+	 * @pre node is in the tree
+	 * Complexity: O(logn)
+	 */
+	public int rankOfNode(IAVLNode node) {
+		int rank = getSizeNull(node.getLeft()) + getCount(node);
+		IAVLNode x = node;
+		while (x.getParent() != null) {
+			IAVLNode parent = x.getParent();
+			if (parent.getRight() == x) rank += getSizeNull(parent.getLeft()) + getCount(parent);
+			x = parent;
+		}
+		return rank;
 	}
 	
 	/**
@@ -781,7 +1151,10 @@ public class AVLTree {
 	 * Complexity: O(logn)
 	 */
 	public int insertByRank(int i, int k, String s) {
+		boolean timed = AVLTreeMetrics.ENABLED && this.metrics != null;
+		long start = timed ? System.nanoTime() : 0L;
 		IAVLNode newNode = new AVLNode(k,s);
+		if (this.monoid != null) updateAggregate(newNode);
 		if (this.empty()) {
 			this.root = newNode;
 			this.max = newNode;
@@ -797,7 +1170,7 @@ public class AVLTree {
 				newNode.setParent(this.min);
 				this.min = newNode;
 			} else {
-				IAVLNode fatherOne = this.treeSelect(i + 1);
+				IAVLNode fatherOne = this.selectNode(i + 1);
 				if (fatherOne.getLeft() == null) {
 					fatherOne.setLeft(newNode);
 					newNode.setParent(fatherOne);
@@ -810,17 +1183,42 @@ public class AVLTree {
 		}
 		
 		updateSizeOnPathToRoot(newNode.getParent(), "i");
-		return fixInsert(newNode.getParent());
+		int numOfRotations = fixInsert(newNode.getParent());
+		if (timed) this.metrics.recordInsertByRank(System.nanoTime() - start);
+		if (this.changeFeed != null) this.changeFeed.publish(ChangeFeed.INSERT_BY_RANK, k, i, s);
+		return numOfRotations;
 	}
 	
 	/**
 	 * public int deleteByRank(int i)
 	 * deletes the node with rank i + 1 from the tree.
 	 * returns the num of rotations that was needed in order to fix the tree 
+	 * in multiset mode, one occurrence is removed from the node with rank i + 1
 	 * Complexity: O(logn)
 	 */
 	public int deleteByRank(int i) {
-		IAVLNode nodeToDelete = this.treeSelect(i + 1);
+		IAVLNode deleted = (this.changeFeed == null) ? null : selectNode(i + 1);
+		String deletedInfo = (deleted == null) ? null : deleted.getValue();
+		int result;
+		if (AVLTreeMetrics.ENABLED && this.metrics != null) {
+			long start = System.nanoTime();
+			result = deleteRank(i);
+			this.metrics.recordDeleteByRank(System.nanoTime() - start);
+		} else {
+			result = deleteRank(i);
+		}
+		if (deleted != null) this.changeFeed.publish(ChangeFeed.DELETE_BY_RANK, deleted.getKey(), i, deletedInfo);
+		return result;
+	}
+
+	/**
+	 * private int deleteRank(int i)
+	 * the delete by rank itself, see deleteByRank
+	 * Complexity: O(logn)
+	 */
+	private int deleteRank(int i) {
+		IAVLNode nodeToDelete = this.selectNode(i + 1);
+		if (decreaseCount(nodeToDelete)) return 0;
 		// update min max if node to delete is last or first 
 		if (i == 0) {
 			this.min = findSuccessor(nodeToDelete);
@@ -831,6 +1229,693 @@ public class AVLTree {
 		return deleteNode(nodeToDelete);
 	}
 
+	// ---------------------- Join and split --------------------------
+
+	/**
+	 * public int join(IAVLNode x, AVLTree t)
+	 * joins t and x with the tree, all of t's keys are smaller than x's key
+	 * and all of the tree's keys are bigger, or the other way around.
+	 * x is a node that is not in any tree, e.g. new AVLNode(k, s).
+	 * afterwards the tree contains all the items and t is empty.
+	 * returns the cost: the difference between the trees' heights + 1
+	 * @pre both trees have the same monoid, value arena and multiset mode
+	 * Complexity: O(|height difference| + 1)
+	 */
+	public int join(IAVLNode x, AVLTree t) {
+		this.rebalance();
+		t.rebalance();
+		// t is on the right if its keys are bigger than x,
+		// decided by whichever tree is not empty
+		boolean tIsBigger = t.empty() ? (!this.empty() && this.root.getKey() < x.getKey())
+				: t.root.getKey() > x.getKey();
+		IAVLNode l = tIsBigger ? this.root : t.root;
+		IAVLNode r = tIsBigger ? t.root : this.root;
+		IAVLNode newMin = (l == null) ? x : (tIsBigger ? this.min : t.min);
+		IAVLNode newMax = (r == null) ? x : (tIsBigger ? t.max : this.max);
+		int cost = Math.abs(getHeightWithNull(l) - getHeightWithNull(r)) + 1;
+		joinNodes(l, x, r);
+		this.min = newMin;
+		this.max = newMax;
+		t.root = null;
+		t.min = null;
+		t.max = null;
+		return cost;
+	}
+
+	/**
+	 * public AVLTree[] split(int x)
+	 * splits the tree around the node with key x.
+	 * returns an array of two trees, the first with the keys smaller than x
+	 * and the second with the keys bigger than x. the node x is in neither,
+	 * and this tree is left empty. with a value arena, x's info is released.
+	 * @pre search(x) != null
+	 * Complexity: O(logn)
+	 */
+	public AVLTree[] split(int x) {
+		this.rebalance();
+		IAVLNode node = findNode(x, false);
+		AVLTree[] trees = splitAtNode(node);
+		if (this.arena != null) this.arena.release(((AVLNode) node).getHandle());
+		return trees;
+	}
+
+	/**
+	 * public AVLTree splitByRank(int i)
+	 * keeps the first i items (by rank, as in treeSelect) in this tree and
+	 * returns a new tree with the rest, in O(logn) by split and join.
+	 * i <= 0 moves all the items, i >= size() moves none.
+	 * the change feed gets a DELETE_BY_RANK event for every moved item
+	 * (the returned tree has no change feed).
+	 * @pre the tree is not in multiset mode
+	 * Complexity: O(logn), plus O(moved items) if a change feed is set
+	 */
+	public AVLTree splitByRank(int i) {
+		AVLTree rest = splitByRankQuietly(i);
+		if (this.changeFeed != null)
+			rest.publishItems(this.changeFeed, ChangeFeed.DELETE_BY_RANK, 0, rest.size(), Math.max(i, 0), 0);
+		return rest;
+	}
+
+	/**
+	 * private AVLTree splitByRankQuietly(int i)
+	 * splitByRank without change feed events
+	 * Complexity: O(logn)
+	 */
+	private AVLTree splitByRankQuietly(int i) {
+		this.rebalance();
+		AVLTree rest = emptyCopy();
+		if (i >= this.size()) return rest;
+		if (i <= 0) {
+			rest.root = this.root;
+			rest.min = this.min;
+			rest.max = this.max;
+			this.root = null;
+			this.min = null;
+			this.max = null;
+			return rest;
+		}
+		// x is the first item of the rest, split leaves it in neither part
+		IAVLNode x = selectNode(i + 1);
+		AVLTree[] parts = splitAtNode(x);
+		rest.joinNodes(null, x, parts[1].root);
+		rest.min = x;
+		rest.max = (parts[1].max == null) ? x : parts[1].max;
+		this.root = parts[0].root;
+		this.min = parts[0].min;
+		this.max = parts[0].max;
+		return rest;
+	}
+
+	/**
+	 * public void concat(AVLTree t)
+	 * appends all of t's items after this tree's items (by rank, keys are
+	 * not compared) and empties t, in O(logn) by join.
+	 * this tree's change feed gets an INSERT_BY_RANK event and t's change
+	 * feed a DELETE_BY_RANK event (at rank 0) for every moved item.
+	 * @pre both trees have the same monoid and value arena and are not in multiset mode
+	 * Complexity: O(logn), plus O(moved items) if a change feed is set
+	 */
+	public void concat(AVLTree t) {
+		int oldSize = this.size();
+		int moved = t.size();
+		concatQuietly(t);
+		if (t.changeFeed != null)
+			publishItems(t.changeFeed, ChangeFeed.DELETE_BY_RANK, oldSize, moved, 0, 0);
+		if (this.changeFeed != null)
+			publishItems(this.changeFeed, ChangeFeed.INSERT_BY_RANK, oldSize, moved, oldSize, 1);
+	}
+
+	/**
+	 * private void concatQuietly(AVLTree t)
+	 * concat without change feed events
+	 * Complexity: O(logn)
+	 */
+	private void concatQuietly(AVLTree t) {
+		if (t.empty()) return;
+		if (this.empty()) {
+			t.rebalance();
+			this.root = t.root;
+			this.min = t.min;
+			this.max = t.max;
+		} else {
+			// t's first node becomes the join's middle node
+			IAVLNode x = t.min;
+			IAVLNode newMax = t.max;
+			// x is deleted from t but lives on in this tree
+			if (t.arena != null) t.arena.retain(((AVLNode)x).getHandle());
+			t.deleteRank(0);
+			t.rebalance();
+			this.rebalance();
+			((AVLNode)x).setPending(false);
+			joinNodes(this.root, x, t.root);
+			this.max = newMax;
+		}
+		t.root = null;
+		t.min = null;
+		t.max = null;
+	}
+
+	/**
+	 * private IAVLNode buildBalanced(int[] keys, String[] infos, int from, int to)
+	 * builds a perfectly balanced subtree of the items from..to-1 and returns
+	 * its root (without a parent), or null if the range is empty
+	 * Complexity: O(to - from)
+	 */
+	private IAVLNode buildBalanced(int[] keys, String[] infos, int from, int to) {
+		if (from >= to) return null;
+		int mid = (from + to) >>> 1;
+		IAVLNode node = new AVLNode(keys[mid], infos[mid]);
+		IAVLNode left = buildBalanced(keys, infos, from, mid);
+		IAVLNode right = buildBalanced(keys, infos, mid + 1, to);
+		connect(left, node, right);
+		return node;
+	}
+
+	/**
+	 * private int joinNodes(IAVLNode l, IAVLNode x, IAVLNode r)
+	 * makes this tree the join of the subtree l, the node x and the subtree r,
+	 * in this order (all of l is before x and all of r is after x).
+	 * l and r are valid AVL subtrees without parents. x is hung on the taller
+	 * subtree at the first node of the other subtree's height, and the path
+	 * from there to the root is fixed like after an insert.
+	 * min and max are not updated.
+	 * returns the number of rotations made by the fix
+	 * Complexity: O(|height difference| + 1)
+	 */
+	private int joinNodes(IAVLNode l, IAVLNode x, IAVLNode r) {
+		int leftHeight = getHeightWithNull(l);
+		int rightHeight = getHeightWithNull(r);
+		x.setParent(null);
+		if (Math.abs(leftHeight - rightHeight) <= 1) {
+			connect(l, x, r);
+			this.root = x;
+		} else if (leftHeight > rightHeight) {
+			// go down the right spine of l to the first node with height <= rightHeight + 1
+			this.root = l;
+			IAVLNode v = l;
+			IAVLNode parent = null;
+			while (getHeightWithNull(v) > rightHeight + 1) {
+				parent = v;
+				v = v.getRight();
+			}
+			connect(v, x, r);
+			parent.setRight(x);
+			x.setParent(parent);
+			return fixAfterJoin(parent);
+		} else {
+			// go down the left spine of r to the first node with height <= leftHeight + 1
+			this.root = r;
+			IAVLNode v = r;
+			IAVLNode parent = null;
+			while (getHeightWithNull(v) > leftHeight + 1) {
+				parent = v;
+				v = v.getLeft();
+			}
+			connect(l, x, v);
+			parent.setLeft(x);
+			x.setParent(parent);
+			return fixAfterJoin(parent);
+		}
+		return 0;
+	}
+
+	/**
+	 * private void connect(IAVLNode l, IAVLNode x, IAVLNode r)
+	 * makes l and r the sons of x and recomputes x's fields
+	 * Complexity: O(1)
+	 */
+	private void connect(IAVLNode l, IAVLNode x, IAVLNode r) {
+		x.setLeft(l);
+		x.setRight(r);
+		if (l != null) l.setParent(x);
+		if (r != null) r.setParent(x);
+		recomputeNode(x);
+	}
+
+	/**
+	 * private int fixAfterJoin(IAVLNode y)
+	 * goes up from y to the root, recomputing every node and
+	 * fixing a criminal if found. returns the number of rotations
+	 * Complexity: O(logn)
+	 */
+	private int fixAfterJoin(IAVLNode y) {
+		int numOfRotations = 0;
+		while (y != null) {
+			IAVLNode originalParent = y.getParent();
+			recomputeNode(y);
+			int bf = BF(y);
+			if (Math.abs(bf) == 2) numOfRotations += fixCriminal(y, bf);
+			y = originalParent;
+		}
+		return numOfRotations;
+	}
+
+	/**
+	 * private AVLTree[] splitAtNode(IAVLNode x)
+	 * splits the tree to the nodes before x and the nodes after x.
+	 * going up from x, every ancestor is joined with its other subtree
+	 * into the smaller or the bigger tree. x is left detached.
+	 * returns {smaller, bigger}, this tree is left empty.
+	 * Complexity: O(logn)
+	 */
+	private AVLTree[] splitAtNode(IAVLNode x) {
+		AVLTree smaller = emptyCopy();
+		AVLTree bigger = emptyCopy();
+		smaller.root = detach(x.getLeft());
+		bigger.root = detach(x.getRight());
+		IAVLNode child = x;
+		IAVLNode parent = x.getParent();
+		while (parent != null) {
+			IAVLNode next = parent.getParent();
+			if (child == parent.getRight()) {
+				smaller.joinNodes(detach(parent.getLeft()), parent, smaller.root);
+			} else {
+				bigger.joinNodes(bigger.root, parent, detach(parent.getRight()));
+			}
+			child = parent;
+			parent = next;
+		}
+		x.setParent(null);
+		x.setLeft(null);
+		x.setRight(null);
+		recomputeNode(x);
+		smaller.resetMinMax();
+		bigger.resetMinMax();
+		this.root = null;
+		this.min = null;
+		this.max = null;
+		return new AVLTree[] {smaller, bigger};
+	}
+
+	/**
+	 * private IAVLNode detach(IAVLNode n)
+	 * disconnects a subtree from its parent (the parent still points to it)
+	 * and returns it
+	 * Complexity: O(1)
+	 */
+	private IAVLNode detach(IAVLNode n) {
+		if (n != null) n.setParent(null);
+		return n;
+	}
+
+	/**
+	 * private AVLTree emptyCopy()
+	 * returns an empty tree with the same settings as this tree
+	 * Complexity: O(1)
+	 */
+	private AVLTree emptyCopy() {
+		AVLTree tree = new AVLTree(this.monoid, this.multiset);
+		tree.metrics = this.metrics;
+		tree.rebalanceBudget = this.rebalanceBudget;
+		tree.arena = this.arena;
+		return tree;
+	}
+
+	/**
+	 * private void resetMinMax()
+	 * finds the min and max nodes of the tree
+	 * Complexity: O(logn)
+	 */
+	private void resetMinMax() {
+		this.min = (this.root == null) ? null : findMin(this.root);
+		this.max = (this.root == null) ? null : findMax(this.root);
+	}
+
+	/**
+	 * private void recomputeNode(IAVLNode n)
+	 * recomputes a node's height, size and aggregate from its sons
+	 * Complexity: O(1)
+	 */
+	private void recomputeNode(IAVLNode n) {
+		updateHeight(n);
+		((AVLNode)n).setSize(getSizeNull(n.getLeft()) + getSizeNull(n.getRight()) + getCount(n));
+		if (this.monoid != null) updateAggregate(n);
+	}
+
+	// ---------------------- Relaxed balance --------------------------
+	// with a rebalance budget, insert and delete only fix sizes and aggregates
+	// and mark the path to the root as pending (a pending node's ancestors
+	// are always pending too); the rotations are done later by rebalance,
+	// bottom up over the pending nodes. search, rank and select stay exact.
+
+	/**
+	 * public void setRebalanceBudget(int budget)
+	 * with budget > 0, up to budget inserts and deletes are not rebalanced
+	 * when they are made. the deferred work is done by rebalance, called
+	 * automatically when budget updates are pending, or earlier by the caller
+	 * (e.g. when a write burst is over). every deferred insert adds at most 1
+	 * to the height, so the height stays below 1.44logn + budget.
+	 * budget <= 0 (the default) rebalances every update right away,
+	 * and rebalances what is pending now.
+	 * a deferred insert or delete returns 0 rotations, and the update that
+	 * uses up the budget returns the rotations of the whole rebalance.
+	 * so, summed over a run of updates, the returned counts are the
+	 * rotations made (the rotations of a rebalance called directly are
+	 * returned by rebalance).
+	 * Complexity: O(1), O(k logn) for k pending updates when budget <= 0
+	 */
+	public void setRebalanceBudget(int budget) {
+		this.rebalanceBudget = Math.max(budget, 0);
+		if (this.rebalanceBudget == 0) this.rebalance();
+	}
+
+	/**
+	 * public int getPendingCount()
+	 * returns the number of updates that were not rebalanced yet
+	 * Complexity: O(1)
+	 */
+	public int getPendingCount() {
+		return this.deferred;
+	}
+
+	/**
+	 * public int rebalance()
+	 * makes the tree a valid AVL tree again after deferred updates.
+	 * the pending nodes are fixed bottom up, so when a node is reached its
+	 * subtrees are valid AVL trees; a node whose subtrees' heights differ by
+	 * more than 1 is rebuilt by joining its subtrees through it.
+	 * returns the number of rotations made by the rebuilds
+	 * Complexity: O(k logn) for k pending updates
+	 */
+	public int rebalance() {
+		int numOfRotations = 0;
+		AVLTree scratch = null;
+		IAVLNode x = isPending(this.root) ? this.root : null;
+		while (x != null) {
+			if (isPending(x.getLeft())) {
+				x = x.getLeft();
+			} else if (isPending(x.getRight())) {
+				x = x.getRight();
+			} else {
+				IAVLNode parent = x.getParent();
+				((AVLNode)x).setPending(false);
+				if (Math.abs(BF(x)) <= 1) {
+					recomputeNode(x);
+				} else {
+					if (scratch == null) scratch = emptyCopy();
+					numOfRotations += rebuildNode(x, scratch);
+				}
+				x = parent;
+			}
+		}
+		this.deferred = 0;
+		return numOfRotations;
+	}
+
+	/**
+	 * private int deferFix(IAVLNode y)
+	 * marks the path from y to the root as pending instead of fixing it,
+	 * and rebalances if the budget is used up.
+	 * returns the number of rotations made by that rebalance, or 0
+	 * Complexity: O(logn), O(k logn) when it rebalances
+	 */
+	private int deferFix(IAVLNode y) {
+		while (y != null) {
+			((AVLNode)y).setPending(true);
+			y = y.getParent();
+		}
+		this.deferred++;
+		return (this.deferred >= this.rebalanceBudget) ? this.rebalance() : 0;
+	}
+
+	/**
+	 * private int rebuildNode(IAVLNode x, AVLTree scratch)
+	 * replaces the subtree of x by the join of x's subtrees through x.
+	 * the join runs in the empty scratch tree, so its rotations never
+	 * touch this tree's root. returns the number of rotations of the join
+	 * @pre x's subtrees are valid AVL trees
+	 * Complexity: O(|BF(x)|)
+	 */
+	private int rebuildNode(IAVLNode x, AVLTree scratch) {
+		IAVLNode parent = x.getParent();
+		boolean isLeftSon = (parent != null && parent.getLeft() == x);
+		int numOfRotations = scratch.joinNodes(detach(x.getLeft()), x, detach(x.getRight()));
+		IAVLNode top = scratch.root;
+		scratch.root = null;
+		top.setParent(parent);
+		if (parent == null) this.root = top;
+		else if (isLeftSon) parent.setLeft(top);
+		else parent.setRight(top);
+		return numOfRotations;
+	}
+
+	/**
+	 * private boolean isPending(IAVLNode n)
+	 * returns true if n is a pending node, false if it is not or null
+	 * Complexity: O(1)
+	 */
+	private boolean isPending(IAVLNode n) {
+		return n != null && ((AVLNode)n).isPending();
+	}
+
+	// ---------------------- Change feed --------------------------
+
+	/**
+	 * public void setChangeFeed(ChangeFeed changeFeed)
+	 * publishes every successful insert, delete, insertByRank and deleteByRank
+	 * to changeFeed (null stops), after the tree was changed.
+	 * rank is the item's 0 based position: for insert and delete by key its
+	 * position in key order (the last occurrence in multiset mode), which
+	 * costs an extra O(logn) per update. when the feed is full the update
+	 * waits for its consumer.
+	 * Complexity: O(1)
+	 */
+	public void setChangeFeed(ChangeFeed changeFeed) {
+		this.changeFeed = changeFeed;
+	}
+
+	/**
+	 * void publishItems(ChangeFeed feed, int type, int from, int count, int rank, int step)
+	 * publishes an event of the given type for each of the items in positions
+	 * from..from+count-1 of this tree, in order, the jth at rank + j * step
+	 * Complexity: O(logn + count)
+	 */
+	void publishItems(ChangeFeed feed, int type, int from, int count, int rank, int step) {
+		IAVLNode node = (count == 0) ? null : selectNode(from + 1);
+		for (int j = 0; j < count; j++) {
+			feed.publish(type, node.getKey(), rank + j * step, node.getValue());
+			node = findSuccessor(node);
+		}
+	}
+
+	/**
+	 * public ChangeFeed getChangeFeed()
+	 * returns the tree's change feed, or null
+	 * Complexity: O(1)
+	 */
+	public ChangeFeed getChangeFeed() {
+		return this.changeFeed;
+	}
+
+	// ---------------------- Metrics --------------------------
+	// recording is guarded by the static final AVLTreeMetrics.ENABLED,
+	// when it is false the JIT drops these calls entirely
+
+	/**
+	 * public void setMetrics(AVLTreeMetrics metrics)
+	 * starts recording the tree's operations into metrics (null stops).
+	 * nothing is recorded unless the JVM runs with -Davltree.metrics=true
+	 * Complexity: O(1)
+	 */
+	public void setMetrics(AVLTreeMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * public AVLTreeMetrics getMetrics()
+	 * returns the metrics the tree records into, or null
+	 * Complexity: O(1)
+	 */
+	public AVLTreeMetrics getMetrics() {
+		return this.metrics;
+	}
+
+	/**
+	 * private void recordPathLength(int depth)
+	 * records the number of nodes visited by a lookup or insert
+	 * Complexity: O(1)
+	 */
+	private void recordPathLength(int depth) {
+		if (AVLTreeMetrics.ENABLED && this.metrics != null) this.metrics.recordPathLength(depth);
+	}
+
+	/**
+	 * private void recordClimb(int climbed)
+	 * records the number of nodes visited by fixInsert / fixDelete
+	 * Complexity: O(1)
+	 */
+	private void recordClimb(int climbed) {
+		if (AVLTreeMetrics.ENABLED && this.metrics != null) this.metrics.recordClimb(climbed);
+	}
+
+	/**
+	 * private void recordRotation(boolean isDouble)
+	 * records a single or double rotation made by fixCriminal
+	 * Complexity: O(1)
+	 */
+	private void recordRotation(boolean isDouble) {
+		if (AVLTreeMetrics.ENABLED && this.metrics != null) this.metrics.recordRotation(isDouble);
+	}
+
+	// ---------------------- Aggregates --------------------------
+	// when the tree is created with a monoid, every node keeps the
+	// aggregate of its subtree, maintained like size on insert, delete
+	// and rotations, so range aggregates take O(logn)
+
+	/**
+	 * public long aggregate()
+	 * returns the aggregate of all the items in the tree,
+	 * or the monoid's identity if the tree is empty
+	 * @pre the tree was created with a monoid
+	 * Complexity: O(1)
+	 */
+	public long aggregate() {
+		return getAggregateNull(this.root);
+	}
+
+	/**
+	 * public long aggregate(int lo, int hi)
+	 * returns the aggregate of the items with lo <= key <= hi,
+	 * combined in key order
+	 * @pre the tree was created with a monoid
+	 * Complexity: O(logn)
+	 */
+	public long aggregate(int lo, int hi) {
+		IAVLNode x = this.root;
+		// find the highest node in the range, the range splits there
+		while (x != null && (x.getKey() < lo || x.getKey() > hi)) {
+			x = (x.getKey() < lo) ? x.getRight() : x.getLeft();
+		}
+		if (x == null || lo > hi) return this.monoid.identity();
+		long result = aggregateFrom(x.getLeft(), lo);
+		result = this.monoid.combine(result, ((AVLNode) x).getSelfAggregate());
+		return this.monoid.combine(result, aggregateTo(x.getRight(), hi));
+	}
+
+	/**
+	 * private long aggregateFrom(IAVLNode node, int lo)
+	 * returns the aggregate of the items in node's subtree with key >= lo
+	 * Complexity: O(logn)
+	 */
+	private long aggregateFrom(IAVLNode node, int lo) {
+		long result = this.monoid.identity();
+		while (node != null) {
+			if (node.getKey() < lo) {
+				node = node.getRight();
+			} else {
+				// node and its right subtree are in the range
+				long right = this.monoid.combine(((AVLNode) node).getSelfAggregate(), getAggregateNull(node.getRight()));
+				result = this.monoid.combine(right, result);
+				node = node.getLeft();
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * private long aggregateTo(IAVLNode node, int hi)
+	 * returns the aggregate of the items in node's subtree with key <= hi
+	 * Complexity: O(logn)
+	 */
+	private long aggregateTo(IAVLNode node, int hi) {
+		long result = this.monoid.identity();
+		while (node != null) {
+			if (node.getKey() > hi) {
+				node = node.getLeft();
+			} else {
+				// node and its left subtree are in the range
+				long left = this.monoid.combine(getAggregateNull(node.getLeft()), ((AVLNode) node).getSelfAggregate());
+				result = this.monoid.combine(result, left);
+				node = node.getRight();
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * public long aggregateByRank(int i, int j)
+	 * returns the aggregate of the items with rank i..j (1 is the first item,
+	 * as in treeSelect), combined in order. ranks outside 1..size() are ignored.
+	 * @pre the tree was created with a monoid
+	 * Complexity: O(logn)
+	 */
+	public long aggregateByRank(int i, int j) {
+		return recAggregateByRank(this.root, i, j);
+	}
+
+	/**
+	 * private long recAggregateByRank(IAVLNode node, int i, int j)
+	 * returns the aggregate of the items with rank i..j in node's subtree.
+	 * a subtree that is fully inside the range returns its cached aggregate,
+	 * so only two paths are walked.
+	 * Complexity: O(logn)
+	 */
+	private long recAggregateByRank(IAVLNode node, int i, int j) {
+		if (node == null || i > j) return this.monoid.identity();
+		if (i <= 1 && j >= getSizeNull(node)) return getAggregateNull(node);
+		int leftSize = getSizeNull(node.getLeft());
+		int count = getCount(node);
+		long result = recAggregateByRank(node.getLeft(), i, Math.min(j, leftSize));
+		// the node's occurrences have ranks leftSize+1..leftSize+count
+		int inRange = Math.min(j, leftSize + count) - Math.max(i, leftSize + 1) + 1;
+		if (inRange > 0) {
+			long self = ((AVLNode) node).self;
+			result = this.monoid.combine(result, inRange == 1 ? self : this.monoid.power(self, inRange));
+		}
+		return this.monoid.combine(result, recAggregateByRank(node.getRight(), i - leftSize - count, j - leftSize - count));
+	}
+
+	/**
+	 * private void updateAggregate(IAVLNode n)
+	 * recomputes a node's aggregate from its sons' aggregates
+	 * Complexity: O(1)
+	 */
+	private void updateAggregate(IAVLNode n) {
+		AVLNode node = (AVLNode) n;
+		long agg = this.monoid.combine(getAggregateNull(n.getLeft()), node.getSelfAggregate());
+		node.setAggregate(this.monoid.combine(agg, getAggregateNull(n.getRight())));
+	}
+
+	/**
+	 * private long getAggregateNull(IAVLNode n)
+	 * returns a node's aggregate or the identity if null
+	 * Complexity: O(1)
+	 */
+	private long getAggregateNull(IAVLNode n) {
+		if (n == null) return this.monoid.identity();
+		return ((AVLNode) n).getAggregate();
+	}
+
+	/**
+	 * public interface Monoid
+	 * an associative aggregate over items, e.g. the sum of a numeric field,
+	 * the max timestamp or the number of flagged items.
+	 * combine must be associative and identity must be its neutral element,
+	 * combine does not have to be commutative (items are combined in key order).
+	 */
+	public interface Monoid {
+		public long identity(); // neutral element of combine
+		public long combine(long a, long b); // associative combine, a is before b
+		public long lift(int key, String info); // the value of a single item
+
+		/**
+		 * public default long power(long a, int n)
+		 * returns a combined with itself n times (n >= 1), used for the
+		 * occurrences of a key in multiset mode. override it when there is
+		 * a direct formula, e.g. a * n for a sum or a for a max.
+		 * Complexity: O(log n) combines
+		 */
+		public default long power(long a, int n) {
+			long result = identity();
+			while (n > 0) {
+				if ((n & 1) == 1) result = combine(result, a);
+				a = combine(a, a);
+				n >>= 1;
+			}
+			return result;
+		}
+	}
+
 	/**
 	 * public interface IAVLNode
 	 * ! Do not delete or modify this - otherwise all tests will fail !
@@ -865,17 +1950,30 @@ public class AVLTree {
 		private IAVLNode rightSon;
 		private int height;
 		private int size;
+		private long aggregate;
+		private int count;
+		private boolean pending;
+		private int handle;
+		// the item lifted by the tree's monoid, so aggregates never read the value back
+		private long self;
 		
 		/**
 		 * public AVLNode(int key,String value)
-		 * constructor, gets key and val and creates new node
-		 * Complexity: O(1) 
+		 * constructor, gets key and val and creates new node.
+		 * when the tree has a value arena, val is interned and only its handle is kept
+		 * Complexity: O(1), O(length of val) with a value arena
 		 */
 		public AVLNode(int key,String value) {
 			this.key = key;
-			this.value = value;
+			if (monoid != null) this.self = monoid.lift(key, value);
+			if (arena != null) {
+				this.handle = arena.intern(value);
+			} else {
+				this.value = value;
+			}
 			this.height = 0;
 			this.size = 1;
+			this.count = 1;
 		}
 		
 		/**
@@ -890,12 +1988,22 @@ public class AVLTree {
 		
 		/**
 		 * public String getValue()
-		 * returns the node's value
-		 * Complexity: O(1) 
+		 * returns the node's value, a new String made from the value arena if the tree has one
+		 * Complexity: O(1), O(length) with a value arena
 		 */
 		public String getValue()
 		{
-			return this.value;
+			return (arena == null) ? this.value : arena.get(this.handle);
+		}
+
+		/**
+		 * public int getHandle()
+		 * returns the handle of the node's value in the tree's value arena
+		 * Complexity: O(1)
+		 */
+		public int getHandle()
+		{
+			return this.handle;
 		}
 		
 		/**
@@ -1003,9 +2111,79 @@ public class AVLTree {
 		{
 			return this.size;
 		}
-	}
-}
 
+		/**
+		 * public void setAggregate(long aggregate)
+		 * updates the aggregate of the node's subtree
+		 * Complexity: O(1)
+		 */
+		public void setAggregate(long aggregate)
+		{
+			this.aggregate = aggregate;
+		}
+
+		/**
+		 * public long getAggregate()
+		 * returns the aggregate of the node's subtree,
+		 * only maintained when the tree has a monoid
+		 * Complexity: O(1)
+		 */
+		public long getAggregate()
+		{
+			return this.aggregate;
+		}
+
+		/**
+		 * public void setCount(int count)
+		 * updates the number of occurrences of the node's key
+		 * Complexity: O(1)
+		 */
+		public void setCount(int count)
+		{
+			this.count = count;
+		}
 
+		/**
+		 * public int getCount()
+		 * returns the number of occurrences of the node's key,
+		 * always 1 unless the tree is in multiset mode
+		 * Complexity: O(1)
+		 */
+		public int getCount()
+		{
+			return this.count;
+		}
 
+		/**
+		 * public void setPending(boolean pending)
+		 * marks the node's subtree as changed since the last rebalance
+		 * Complexity: O(1)
+		 */
+		public void setPending(boolean pending)
+		{
+			this.pending = pending;
+		}
+
+		/**
+		 * public boolean isPending()
+		 * returns true if the node's subtree waits for a rebalance,
+		 * only used when the tree has a rebalance budget
+		 * Complexity: O(1)
+		 */
+		public boolean isPending()
+		{
+			return this.pending;
+		}
+
+		/**
+		 * private long getSelfAggregate()
+		 * returns the value of the node's occurrences under the tree's monoid
+		 * Complexity: O(1), O(log count) in multiset mode
+		 */
+		private long getSelfAggregate()
+		{
+			return this.count == 1 ? this.self : monoid.power(this.self, this.count);
+		}
+	}
+}
 
@@ -0,0 +1,366 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ *
+ * AVLTreeMetrics
+ *
+ * Hot path metrics of an AVLTree (and the TreeList on top of it):
+ * operation counts, single and double rotations, lookup path lengths,
+ * fixInsert / fixDelete climb depths and per operation latency histograms.
+ * Counters are striped LongAdders, so one metrics object can be shared by
+ * several trees and threads. Read them with the getters or over JMX.
+ *
+ * Metrics are only recorded when the JVM runs with -Davltree.metrics=true.
+ * ENABLED is a static final constant, so otherwise the JIT removes every
+ * recording branch and the tree runs the same code as without metrics.
+ *
+ */
+
+public class AVLTreeMetrics implements AVLTreeMetricsMBean {
+	public static final boolean ENABLED = Boolean.getBoolean("avltree.metrics");
+
+	private LongAdder searches = new LongAdder();
+	private LongAdder inserts = new LongAdder();
+	private LongAdder deletes = new LongAdder();
+	private LongAdder insertsByRank = new LongAdder();
+	private LongAdder deletesByRank = new LongAdder();
+	private LongAdder selects = new LongAdder();
+	private LongAdder singleRotations = new LongAdder();
+	private LongAdder doubleRotations = new LongAdder();
+	private LongAdder paths = new LongAdder();
+	private LongAdder pathNodes = new LongAdder();
+	private LongAdder climbs = new LongAdder();
+	private LongAdder climbNodes = new LongAdder();
+	private LatencyHistogram searchLatency = new LatencyHistogram();
+	private LatencyHistogram insertLatency = new LatencyHistogram();
+	private LatencyHistogram deleteLatency = new LatencyHistogram();
+	private LatencyHistogram selectLatency = new LatencyHistogram();
+
+	/**
+	 * public void registerMBean(String name)
+	 * registers the metrics in the platform MBean server as
+	 * avltree:type=AVLTreeMetrics,name=<name>
+	 * Complexity: O(1)
+	 */
+	public void registerMBean(String name) throws JMException {
+		ObjectName objectName = new ObjectName("avltree:type=AVLTreeMetrics,name=" + ObjectName.quote(name));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+	}
+
+	// ---------------------- recording --------------------------
+
+	/**
+	 * void recordSearch(long nanos)
+	 * records a search by key
+	 * Complexity: O(1)
+	 */
+	void recordSearch(long nanos) {
+		this.searches.increment();
+		this.searchLatency.record(nanos);
+	}
+
+	/**
+	 * void recordInsert(long nanos)
+	 * records an insert by key
+	 * Complexity: O(1)
+	 */
+	void recordInsert(long nanos) {
+		this.inserts.increment();
+		this.insertLatency.record(nanos);
+	}
+
+	/**
+	 * void recordDelete(long nanos)
+	 * records a delete by key
+	 * Complexity: O(1)
+	 */
+	void recordDelete(long nanos) {
+		this.deletes.increment();
+		this.deleteLatency.record(nanos);
+	}
+
+	/**
+	 * void recordInsertByRank(long nanos)
+	 * records an insert by rank, its latency goes to the insert histogram
+	 * Complexity: O(1)
+	 */
+	void recordInsertByRank(long nanos) {
+		this.insertsByRank.increment();
+		this.insertLatency.record(nanos);
+	}
+
+	/**
+	 * void recordDeleteByRank(long nanos)
+	 * records a delete by rank, its latency goes to the delete histogram
+	 * Complexity: O(1)
+	 */
+	void recordDeleteByRank(long nanos) {
+		this.deletesByRank.increment();
+		this.deleteLatency.record(nanos);
+	}
+
+	/**
+	 * void recordSelect(long nanos)
+	 * records a treeSelect (a TreeList retrieve)
+	 * Complexity: O(1)
+	 */
+	void recordSelect(long nanos) {
+		this.selects.increment();
+		this.selectLatency.record(nanos);
+	}
+
+	/**
+	 * void recordRotation(boolean isDouble)
+	 * records a rebalancing by a single rotation or a double
+	 * rotation (rotateLeftRight / rotateRightLeft)
+	 * Complexity: O(1)
+	 */
+	void recordRotation(boolean isDouble) {
+		if (isDouble) this.doubleRotations.increment();
+		else this.singleRotations.increment();
+	}
+
+	/**
+	 * void recordPathLength(int nodes)
+	 * records the number of nodes visited from the root by a lookup or insert
+	 * Complexity: O(1)
+	 */
+	void recordPathLength(int nodes) {
+		this.paths.increment();
+		this.pathNodes.add(nodes);
+	}
+
+	/**
+	 * void recordClimb(int nodes)
+	 * records the number of nodes visited by fixInsert / fixDelete
+	 * Complexity: O(1)
+	 */
+	void recordClimb(int nodes) {
+		this.climbs.increment();
+		this.climbNodes.add(nodes);
+	}
+
+	// ---------------------- pull API --------------------------
+
+	/**
+	 * public long getSearchCount()
+	 * returns the number of searches by key
+	 * Complexity: O(1)
+	 */
+	public long getSearchCount() {
+		return this.searches.sum();
+	}
+
+	/**
+	 * public long getInsertCount()
+	 * returns the number of inserts by key
+	 * Complexity: O(1)
+	 */
+	public long getInsertCount() {
+		return this.inserts.sum();
+	}
+
+	/**
+	 * public long getDeleteCount()
+	 * returns the number of deletes by key
+	 * Complexity: O(1)
+	 */
+	public long getDeleteCount() {
+		return this.deletes.sum();
+	}
+
+	/**
+	 * public long getInsertByRankCount()
+	 * returns the number of inserts by rank
+	 * Complexity: O(1)
+	 */
+	public long getInsertByRankCount() {
+		return this.insertsByRank.sum();
+	}
+
+	/**
+	 * public long getDeleteByRankCount()
+	 * returns the number of deletes by rank
+	 * Complexity: O(1)
+	 */
+	public long getDeleteByRankCount() {
+		return this.deletesByRank.sum();
+	}
+
+	/**
+	 * public long getSelectCount()
+	 * returns the number of treeSelect calls (not counting the
+	 * lookups by rank made inside other operations)
+	 * Complexity: O(1)
+	 */
+	public long getSelectCount() {
+		return this.selects.sum();
+	}
+
+	/**
+	 * public long getSingleRotationCount()
+	 * returns the number of single rotations
+	 * Complexity: O(1)
+	 */
+	public long getSingleRotationCount() {
+		return this.singleRotations.sum();
+	}
+
+	/**
+	 * public long getDoubleRotationCount()
+	 * returns the number of double rotations
+	 * Complexity: O(1)
+	 */
+	public long getDoubleRotationCount() {
+		return this.doubleRotations.sum();
+	}
+
+	/**
+	 * public double getAveragePathLength()
+	 * returns the average number of nodes visited from the root by a key
+	 * lookup (search, findNode, count), insert or delete, or 0 if there were none
+	 * Complexity: O(1)
+	 */
+	public double getAveragePathLength() {
+		long count = this.paths.sum();
+		return count == 0 ? 0 : (double) this.pathNodes.sum() / count;
+	}
+
+	/**
+	 * public double getAverageClimbDepth()
+	 * returns the average number of nodes visited by fixInsert / fixDelete,
+	 * or 0 if there were none
+	 * Complexity: O(1)
+	 */
+	public double getAverageClimbDepth() {
+		long count = this.climbs.sum();
+		return count == 0 ? 0 : (double) this.climbNodes.sum() / count;
+	}
+
+	/**
+	 * public long getSearchLatencyP50()
+	 * returns the median search latency in nanoseconds
+	 * Complexity: O(B) for the histogram's B buckets
+	 */
+	public long getSearchLatencyP50() {
+		return this.searchLatency.getValueAtPercentile(50);
+	}
+
+	/**
+	 * public long getSearchLatencyP99()
+	 * returns the 99th percentile search latency in nanoseconds
+	 * Complexity: O(B) for the histogram's B buckets
+	 */
+	public long getSearchLatencyP99() {
+		return this.searchLatency.getValueAtPercentile(99);
+	}
+
+	/**
+	 * public long getInsertLatencyP50()
+	 * returns the median insert latency in nanoseconds
+	 * Complexity: O(B) for the histogram's B buckets
+	 */
+	public long getInsertLatencyP50() {
+		return this.insertLatency.getValueAtPercentile(50);
+	}
+
+	/**
+	 * public long getInsertLatencyP99()
+	 * returns the 99th percentile insert latency in nanoseconds
+	 * Complexity: O(B) for the histogram's B buckets
+	 */
+	public long getInsertLatencyP99() {
+		return this.insertLatency.getValueAtPercentile(99);
+	}
+
+	/**
+	 * public long getDeleteLatencyP50()
+	 * returns the median delete latency in nanoseconds
+	 * Complexity: O(B) for the histogram's B buckets
+	 */
+	public long getDeleteLatencyP50() {
+		return this.deleteLatency.getValueAtPercentile(50);
+	}
+
+	/**
+	 * public long getDeleteLatencyP99()
+	 * returns the 99th percentile delete latency in nanoseconds
+	 * Complexity: O(B) for the histogram's B buckets
+	 */
+	public long getDeleteLatencyP99() {
+		return this.deleteLatency.getValueAtPercentile(99);
+	}
+
+	/**
+	 * public long getSelectLatencyP99()
+	 * returns the 99th percentile treeSelect latency in nanoseconds
+	 * Complexity: O(B) for the histogram's B buckets
+	 */
+	public long getSelectLatencyP99() {
+		return this.selectLatency.getValueAtPercentile(99);
+	}
+
+	/**
+	 * public LatencyHistogram getSearchLatency()
+	 * returns the search latency histogram, in nanoseconds
+	 * Complexity: O(1)
+	 */
+	public LatencyHistogram getSearchLatency() {
+		return this.searchLatency;
+	}
+
+	/**
+	 * public LatencyHistogram getInsertLatency()
+	 * returns the insert (by key or rank) latency histogram, in nanoseconds
+	 * Complexity: O(1)
+	 */
+	public LatencyHistogram getInsertLatency() {
+		return this.insertLatency;
+	}
+
+	/**
+	 * public LatencyHistogram getDeleteLatency()
+	 * returns the delete (by key or rank) latency histogram, in nanoseconds
+	 * Complexity: O(1)
+	 */
+	public LatencyHistogram getDeleteLatency() {
+		return this.deleteLatency;
+	}
+
+	/**
+	 * public LatencyHistogram getSelectLatency()
+	 * returns the treeSelect latency histogram, in nanoseconds
+	 * Complexity: O(1)
+	 */
+	public LatencyHistogram getSelectLatency() {
+		return this.selectLatency;
+	}
+
+	/**
+	 * public void reset()
+	 * sets all counters and histograms to zero
+	 * Complexity: O(B) for the histograms' B buckets
+	 */
+	public void reset() {
+		this.searches.reset();
+		this.inserts.reset();
+		this.deletes.reset();
+		this.insertsByRank.reset();
+		this.deletesByRank.reset();
+		this.selects.reset();
+		this.singleRotations.reset();
+		this.doubleRotations.reset();
+		this.paths.reset();
+		this.pathNodes.reset();
+		this.climbs.reset();
+		this.climbNodes.reset();
+		this.searchLatency.reset();
+		this.insertLatency.reset();
+		this.deleteLatency.reset();
+		this.selectLatency.reset();
+	}
+}
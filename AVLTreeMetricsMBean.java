@@ -0,0 +1,28 @@
+/**
+ *
+ * AVLTreeMetricsMBean
+ *
+ * The JMX view of AVLTreeMetrics, latencies are in nanoseconds.
+ *
+ */
+
+public interface AVLTreeMetricsMBean {
+	public long getSearchCount();
+	public long getInsertCount();
+	public long getDeleteCount();
+	public long getInsertByRankCount();
+	public long getDeleteByRankCount();
+	public long getSelectCount();
+	public long getSingleRotationCount();
+	public long getDoubleRotationCount();
+	public double getAveragePathLength(); // nodes visited by a key lookup or insert
+	public double getAverageClimbDepth(); // nodes visited by fixInsert / fixDelete
+	public long getSearchLatencyP50();
+	public long getSearchLatencyP99();
+	public long getInsertLatencyP50();
+	public long getInsertLatencyP99();
+	public long getDeleteLatencyP50();
+	public long getDeleteLatencyP99();
+	public long getSelectLatencyP99();
+	public void reset();
+}
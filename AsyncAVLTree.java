@@ -0,0 +1,278 @@
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntConsumer;
+
+/**
+ *
+ * Async AVL tree
+ *
+ * A CompletableFuture based facade over a shared AVLTree that coalesces
+ * concurrent lookups. searchAsync queues the key, and a single drain task on
+ * the executor takes the queued keys in batches, sorts each batch and
+ * resolves it in one descent of the tree (AVLTree.multiGetSorted) under a read lock.
+ * Locking uses java.util.concurrent locks only (no synchronized), so callers
+ * on virtual threads are never pinned to their carrier; pass a virtual
+ * thread per task executor to run the drain task on one as well.
+ *
+ */
+
+public class AsyncAVLTree {
+	private AVLTree tree;
+	private ReentrantReadWriteLock lock;
+	private Executor executor;
+	private int maxBatchSize;
+	private long coalesceNanos;
+	private ConcurrentLinkedQueue<Lookup> pending;
+	private AtomicBoolean draining;
+	private AtomicLong batches;
+	private AtomicLong lookups;
+	private volatile int largestBatch;
+	private volatile IntConsumer batchListener;
+
+	/**
+	 * public AsyncAVLTree(AVLTree tree, Executor executor, int maxBatchSize, long coalesceNanos)
+	 * constructor. lookups are resolved on executor in batches of at most
+	 * maxBatchSize keys. the drain task waits coalesceNanos (0 for no wait)
+	 * before taking a batch, to let more lookups join it.
+	 * the tree must only be changed through this facade.
+	 * Complexity: O(1)
+	 */
+	public AsyncAVLTree(AVLTree tree, Executor executor, int maxBatchSize, long coalesceNanos) {
+		this.tree = tree;
+		this.lock = new ReentrantReadWriteLock();
+		this.executor = executor;
+		this.maxBatchSize = Math.max(1, maxBatchSize);
+		this.coalesceNanos = coalesceNanos;
+		this.pending = new ConcurrentLinkedQueue<>();
+		this.draining = new AtomicBoolean(false);
+		this.batches = new AtomicLong();
+		this.lookups = new AtomicLong();
+		this.largestBatch = 0;
+	}
+
+	/**
+	 * public CompletableFuture<String> searchAsync(int k)
+	 * returns a future of the info of an item with key k,
+	 * or of null if there is no such item
+	 * Complexity: O(1) to queue, O(logn) amortized over the batch to resolve
+	 */
+	public CompletableFuture<String> searchAsync(int k) {
+		Lookup lookup = new Lookup(k);
+		this.pending.add(lookup);
+		if (this.draining.compareAndSet(false, true)) {
+			schedule();
+		}
+		return lookup.future;
+	}
+
+	/**
+	 * public int insert(int k, String i)
+	 * inserts an item under the write lock, see AVLTree.insert
+	 * Complexity: O(logn)
+	 */
+	public int insert(int k, String i) {
+		this.lock.writeLock().lock();
+		try {
+			return this.tree.insert(k, i);
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * public int delete(int k)
+	 * deletes an item under the write lock, see AVLTree.delete
+	 * Complexity: O(logn)
+	 */
+	public int delete(int k) {
+		this.lock.writeLock().lock();
+		try {
+			return this.tree.delete(k);
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * public void setBatchListener(IntConsumer batchListener)
+	 * the listener gets the size of every resolved batch (null stops),
+	 * it is called on the drain task so it must be quick
+	 * Complexity: O(1)
+	 */
+	public void setBatchListener(IntConsumer batchListener) {
+		this.batchListener = batchListener;
+	}
+
+	/**
+	 * public long getBatchCount()
+	 * returns the number of resolved batches
+	 * Complexity: O(1)
+	 */
+	public long getBatchCount() {
+		return this.batches.get();
+	}
+
+	/**
+	 * public long getLookupCount()
+	 * returns the number of resolved lookups
+	 * Complexity: O(1)
+	 */
+	public long getLookupCount() {
+		return this.lookups.get();
+	}
+
+	/**
+	 * public double getAverageBatchSize()
+	 * returns the average number of lookups per batch
+	 * Complexity: O(1)
+	 */
+	public double getAverageBatchSize() {
+		long count = this.batches.get();
+		return count == 0 ? 0 : (double) this.lookups.get() / count;
+	}
+
+	/**
+	 * public int getLargestBatchSize()
+	 * returns the size of the largest batch so far
+	 * Complexity: O(1)
+	 */
+	public int getLargestBatchSize() {
+		return this.largestBatch;
+	}
+
+	/**
+	 * private void schedule()
+	 * runs a drain task on the executor, after draining was set.
+	 * if the executor rejects it, draining is reset and the queued lookups
+	 * fail with the executor's exception
+	 * Complexity: O(1), O(m) for m failed lookups
+	 */
+	private void schedule() {
+		while (true) {
+			try {
+				this.executor.execute(this::drain);
+				return;
+			} catch (RuntimeException e) {
+				this.draining.set(false);
+				Lookup lookup;
+				while ((lookup = this.pending.poll()) != null) lookup.future.completeExceptionally(e);
+				// a lookup queued meanwhile may have seen draining still set
+				if (this.pending.isEmpty() || !this.draining.compareAndSet(false, true)) return;
+			}
+		}
+	}
+
+	/**
+	 * private void drain()
+	 * the drain task: resolves batches until the queue is empty.
+	 * only one drain task runs at a time. if the task ends with an exception
+	 * (e.g. from the batch listener), draining is reset and a new task is
+	 * scheduled for the lookups still queued.
+	 * Complexity: O(m logn) for m lookups
+	 */
+	private void drain() {
+		boolean idle = false;
+		try {
+			drainBatches();
+			idle = true;
+		} finally {
+			if (!idle) {
+				this.draining.set(false);
+				if (!this.pending.isEmpty() && this.draining.compareAndSet(false, true)) schedule();
+			}
+		}
+	}
+
+	/**
+	 * private void drainBatches()
+	 * resolves batches until the queue is empty, then resets draining
+	 * Complexity: O(m logn) for m lookups
+	 */
+	private void drainBatches() {
+		Lookup[] batch = new Lookup[this.maxBatchSize];
+		long[] order = new long[this.maxBatchSize];
+		int[] keys = new int[this.maxBatchSize];
+		String[] results = new String[this.maxBatchSize];
+		while (true) {
+			if (this.coalesceNanos > 0) LockSupport.parkNanos(this.coalesceNanos);
+			int n = 0;
+			Lookup lookup;
+			while (n < this.maxBatchSize && (lookup = this.pending.poll()) != null) {
+				batch[n++] = lookup;
+			}
+			if (n == 0) {
+				this.draining.set(false);
+				// a lookup queued after the last poll may have seen draining still set
+				if (this.pending.isEmpty() || !this.draining.compareAndSet(false, true)) return;
+				continue;
+			}
+			try {
+				resolve(batch, n, order, keys, results);
+			} catch (RuntimeException e) {
+				for (int j = 0; j < n; j++) batch[j].future.completeExceptionally(e);
+			}
+			Arrays.fill(batch, 0, n, null);
+			report(n);
+		}
+	}
+
+	/**
+	 * private void resolve(Lookup[] batch, int n, long[] order, int[] keys, String[] results)
+	 * sorts the batch by key and resolves it in one descent of the tree,
+	 * then completes the futures outside the lock
+	 * Complexity: O(m log(n/m) + m log m) for m lookups
+	 */
+	private void resolve(Lookup[] batch, int n, long[] order, int[] keys, String[] results) {
+		// sort the positions by key: the key in the high half, its position in the low half
+		for (int j = 0; j < n; j++) {
+			order[j] = ((long) batch[j].key << 32) | j;
+		}
+		Arrays.sort(order, 0, n);
+		for (int j = 0; j < n; j++) {
+			keys[j] = (int) (order[j] >> 32);
+		}
+		this.lock.readLock().lock();
+		try {
+			this.tree.multiGetSorted(keys, 0, n, results);
+		} finally {
+			this.lock.readLock().unlock();
+		}
+		for (int j = 0; j < n; j++) {
+			batch[(int) order[j]].future.complete(results[j]);
+			results[j] = null;
+		}
+	}
+
+	/**
+	 * private void report(int n)
+	 * records the size of a resolved batch
+	 * Complexity: O(1)
+	 */
+	private void report(int n) {
+		this.batches.incrementAndGet();
+		this.lookups.addAndGet(n);
+		if (n > this.largestBatch) this.largestBatch = n;
+		IntConsumer listener = this.batchListener;
+		if (listener != null) listener.accept(n);
+	}
+
+	/**
+	 * private static class Lookup
+	 * a queued search and its future
+	 */
+	private static class Lookup {
+		private final int key;
+		private final CompletableFuture<String> future;
+
+		private Lookup(int key) {
+			this.key = key;
+			this.future = new CompletableFuture<>();
+		}
+	}
+}
@@ -0,0 +1,165 @@
+/**
+ *
+ * Cached AVL tree
+ *
+ * An AVLTree with a read-through front cache on search. A hit is a single
+ * probe of an IntClockCache instead of a walk down the tree; a miss walks
+ * the tree and caches the item if it was found. insert and delete drop the
+ * key from the cache, so the cache never returns a stale info.
+ * The tree must only be changed through this class.
+ *
+ */
+
+public class CachedAVLTree {
+	// returned by the cache on a miss, never cached (compared by identity)
+	private static final String MISSING = new String("missing");
+
+	private AVLTree tree;
+	private IntClockCache cache;
+	private long hits;
+	private long misses;
+
+	/**
+	 * public CachedAVLTree(int cacheCapacity)
+	 * constructor, an empty tree with a cache of cacheCapacity items.
+	 * Complexity: O(cacheCapacity)
+	 */
+	public CachedAVLTree(int cacheCapacity) {
+		this(new AVLTree(), cacheCapacity);
+	}
+
+	/**
+	 * public CachedAVLTree(AVLTree tree, int cacheCapacity)
+	 * constructor, caches the searches of an existing tree.
+	 * Complexity: O(cacheCapacity)
+	 */
+	public CachedAVLTree(AVLTree tree, int cacheCapacity) {
+		this.tree = tree;
+		this.cache = new IntClockCache(cacheCapacity);
+		this.hits = 0;
+		this.misses = 0;
+	}
+
+	/**
+	 * public AVLTree getTree()
+	 * returns the underlying tree, for reads
+	 * Complexity: O(1)
+	 */
+	public AVLTree getTree() {
+		return this.tree;
+	}
+
+	/**
+	 * public boolean empty()
+	 * returns true if and only if the tree is empty
+	 * Complexity: O(1)
+	 */
+	public boolean empty() {
+		return this.tree.empty();
+	}
+
+	/**
+	 * public int size()
+	 * returns the number of items in the tree
+	 * Complexity: O(1)
+	 */
+	public int size() {
+		return this.tree.size();
+	}
+
+	/**
+	 * public String search(int k)
+	 * returns the info of an item with key k if it exists in the tree
+	 * otherwise, returns null
+	 * Complexity: O(1) expected on a hit, O(logn) on a miss
+	 */
+	public String search(int k) {
+		String cached = this.cache.get(k, MISSING);
+		if (cached != MISSING) {
+			this.hits++;
+			return cached;
+		}
+		this.misses++;
+		AVLTree.IAVLNode node = this.tree.findNode(k);
+		if (node == null) return null;
+		String info = node.getValue();
+		this.cache.put(k, info);
+		return info;
+	}
+
+	/**
+	 * public int insert(int k, String i)
+	 * inserts an item, see AVLTree.insert
+	 * Complexity: O(logn)
+	 */
+	public int insert(int k, String i) {
+		this.cache.remove(k);
+		return this.tree.insert(k, i);
+	}
+
+	/**
+	 * public int delete(int k)
+	 * deletes an item, see AVLTree.delete
+	 * Complexity: O(logn)
+	 */
+	public int delete(int k) {
+		this.cache.remove(k);
+		return this.tree.delete(k);
+	}
+
+	/**
+	 * public void clearCache()
+	 * empties the cache, the statistics are kept
+	 * Complexity: O(cache capacity)
+	 */
+	public void clearCache() {
+		this.cache.clear();
+	}
+
+	/**
+	 * public long getHitCount()
+	 * returns the number of searches answered by the cache
+	 * Complexity: O(1)
+	 */
+	public long getHitCount() {
+		return this.hits;
+	}
+
+	/**
+	 * public long getMissCount()
+	 * returns the number of searches that walked the tree
+	 * Complexity: O(1)
+	 */
+	public long getMissCount() {
+		return this.misses;
+	}
+
+	/**
+	 * public long getEvictionCount()
+	 * returns the number of items evicted from the cache
+	 * Complexity: O(1)
+	 */
+	public long getEvictionCount() {
+		return this.cache.getEvictionCount();
+	}
+
+	/**
+	 * public double getHitRatio()
+	 * returns hits / searches, or 0 if there were no searches
+	 * Complexity: O(1)
+	 */
+	public double getHitRatio() {
+		long total = this.hits + this.misses;
+		return total == 0 ? 0 : (double) this.hits / total;
+	}
+
+	/**
+	 * public void resetStats()
+	 * sets the hit and miss counts to 0
+	 * Complexity: O(1)
+	 */
+	public void resetStats() {
+		this.hits = 0;
+		this.misses = 0;
+	}
+}
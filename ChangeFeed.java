@@ -0,0 +1,182 @@
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ *
+ * Change feed
+ *
+ * A bounded ring buffer of change events (insert, delete, insertByRank,
+ * deleteByRank) published by an AVLTree or a TreeList, so a consumer can
+ * keep a replica up to date incrementally. Events are kept in primitive
+ * arrays and numbered by a sequence number starting at 1. When the ring is
+ * full, the publisher waits until the consumer frees room (backpressure).
+ * A consumer takes the events in batches with poll; there must be a single
+ * consumer thread.
+ *
+ */
+
+public class ChangeFeed {
+	public static final int INSERT = 0; // insert(key, info), rank is the item's position by key
+	public static final int DELETE = 1; // delete(key), rank is the item's position before it
+	public static final int INSERT_BY_RANK = 2; // insertByRank(rank, key, info)
+	public static final int DELETE_BY_RANK = 3; // deleteByRank(rank), key and info of the deleted item
+
+	private int mask;
+	private byte[] types;
+	private int[] keys;
+	private int[] ranks;
+	private String[] infos;
+	// sequence number of the last published event and of the last consumed one
+	private long tail;
+	private long head;
+	private ReentrantLock lock;
+	private Condition notFull;
+	private Condition notEmpty;
+
+	/**
+	 * public ChangeFeed(int capacity)
+	 * constructor, the ring holds at least capacity events (rounded up to a power of 2)
+	 * Complexity: O(capacity)
+	 */
+	public ChangeFeed(int capacity) {
+		int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+		this.mask = size - 1;
+		this.types = new byte[size];
+		this.keys = new int[size];
+		this.ranks = new int[size];
+		this.infos = new String[size];
+		this.tail = 0;
+		this.head = 0;
+		this.lock = new ReentrantLock();
+		this.notFull = this.lock.newCondition();
+		this.notEmpty = this.lock.newCondition();
+	}
+
+	/**
+	 * public long publish(int type, int key, int rank, String info)
+	 * appends an event, waiting while the ring is full.
+	 * returns the event's sequence number
+	 * Complexity: O(1), plus the wait for the consumer
+	 */
+	public long publish(int type, int key, int rank, String info) {
+		this.lock.lock();
+		try {
+			while (this.tail - this.head > this.mask) this.notFull.awaitUninterruptibly();
+			long seq = ++this.tail;
+			int slot = (int) seq & this.mask;
+			this.types[slot] = (byte) type;
+			this.keys[slot] = key;
+			this.ranks[slot] = rank;
+			this.infos[slot] = info;
+			this.notEmpty.signal();
+			return seq;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * public int poll(Listener listener, int maxEvents)
+	 * passes up to maxEvents of the oldest events to listener, in order,
+	 * without waiting. returns the number of events passed.
+	 * the listener runs outside the lock, so the publisher is not blocked by it
+	 * unless the ring is full.
+	 * Complexity: O(number of events)
+	 */
+	public int poll(Listener listener, int maxEvents) {
+		long from;
+		long to;
+		this.lock.lock();
+		try {
+			from = this.head;
+			to = Math.min(this.tail, from + Math.max(maxEvents, 0));
+		} finally {
+			this.lock.unlock();
+		}
+		// the slots in (from, to] are not reused until head passes them
+		for (long seq = from + 1; seq <= to; seq++) {
+			int slot = (int) seq & this.mask;
+			listener.onEvent(seq, this.types[slot], this.keys[slot], this.ranks[slot], this.infos[slot]);
+			this.infos[slot] = null;
+		}
+		if (to == from) return 0;
+		this.lock.lock();
+		try {
+			this.head = to;
+			this.notFull.signalAll();
+		} finally {
+			this.lock.unlock();
+		}
+		return (int) (to - from);
+	}
+
+	/**
+	 * public int poll(Listener listener, int maxEvents, long timeout, TimeUnit unit)
+	 * like poll, but waits up to timeout for an event if there is none.
+	 * returns 0 if the wait timed out or the thread was interrupted
+	 * (the interrupt status is kept).
+	 * Complexity: O(number of events), plus the wait
+	 */
+	public int poll(Listener listener, int maxEvents, long timeout, TimeUnit unit) {
+		long nanos = unit.toNanos(timeout);
+		this.lock.lock();
+		try {
+			while (this.tail == this.head) {
+				if (nanos <= 0) return 0;
+				nanos = this.notEmpty.awaitNanos(nanos);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return 0;
+		} finally {
+			this.lock.unlock();
+		}
+		return poll(listener, maxEvents);
+	}
+
+	/**
+	 * public long getLastSequence()
+	 * returns the sequence number of the last published event, 0 if none
+	 * Complexity: O(1)
+	 */
+	public long getLastSequence() {
+		this.lock.lock();
+		try {
+			return this.tail;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * public int pending()
+	 * returns the number of published events that were not polled yet
+	 * Complexity: O(1)
+	 */
+	public int pending() {
+		this.lock.lock();
+		try {
+			return (int) (this.tail - this.head);
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * public int capacity()
+	 * returns the number of events the ring holds
+	 * Complexity: O(1)
+	 */
+	public int capacity() {
+		return this.mask + 1;
+	}
+
+	/**
+	 * public interface Listener
+	 * receives polled events in sequence order
+	 */
+	public interface Listener {
+		public void onEvent(long seq, int type, int key, int rank, String info);
+	}
+}
@@ -3,6 +3,11 @@
  * Circular list
  *
  * An implementation of a circular list with  key and info
+ * The items are kept in an array, so retrieve returns the stored Item
+ * without allocating, and their keys are mirrored in a parallel int array,
+ * so the key scans (indexOf, countInRange, filterByKey) run over primitive
+ * ints: the list is at most two contiguous segments of the arrays (before
+ * and after the wrap around), and each segment is a plain loop without modulo.
  *
  */
  
@@ -11,6 +16,7 @@
 	 private int length;
 	 private int start;
 	 private Item [] array;
+	 private int [] keys;
 
 	/**
 	 *  Complexity: O(1)
@@ -18,6 +24,7 @@
 	public CircularList (int maxLen){
 		this.maxLen = maxLen;
 		this.array = new Item[this.maxLen];
+		this.keys = new int[this.maxLen];
 		this.start = 0;
 		this.length = 0;
 	}
@@ -33,6 +40,15 @@
 	 int index = (this.start + i) % this.maxLen;
 	 return this.array[index];
   }
+  /**
+   * public int size()
+   * returns the number of items in the list
+   *  Complexity: O(1)
+   */
+  public int size()
+  {
+	 return this.length;
+  }
   /**
    * public int insert(int i, int k, String s) 
    *
@@ -47,11 +63,11 @@
 	  else {
 		  if (i > this.length - i) {
 			  shiftRight(i - 1, this.length - 1);
-			  this.array[(this.start + i) % this.maxLen] = new Item(k, s);
+			  set((this.start + i) % this.maxLen, k, s);
 		  } else {
 			  shiftLeft(0, i);
 			  this.start = Math.floorMod(this.start - 1, this.maxLen);
-			  this.array[(this.start + i) % this.maxLen] = new Item(k, s);
+			  set((this.start + i) % this.maxLen, k, s);
 		  }
 	  }
 	  this.length++;
@@ -70,7 +86,7 @@
  	   if (i == 0) deleteFirst();
  	   else if (i != this.length-1) {
  		   if (i > this.length - i) {
- 				  shiftLeft(i + 1, this.length - 1);
+ 				  shiftLeft(i + 1, this.length);
  			  } else {
  				  shiftRight(0, i-1);
  				  this.start = (this.start + 1) % this.maxLen;
@@ -86,11 +102,11 @@
    */
   private void insertFirst(int k, String s){
 	   if (this.length == 0) {
-		   this.array[this.start] = new Item(k,s);
+		   set(this.start, k, s);
 		   
 	   } else {
 		   int newStart = Math.floorMod(this.start - 1, this.maxLen);
-		   this.array[newStart] = new Item(k,s);
+		   set(newStart, k, s);
 		   this.start = newStart;
 	   }
   }
@@ -100,7 +116,7 @@
    *  Complexity: O(1)
    */
   private void insertLast(int k, String s) {
-	   this.array[(this.start + this.length) % this.maxLen] = new Item(k,s);
+	   set((this.start + this.length) % this.maxLen, k, s);
   }
   /**
    * private void shiftRight(int start, int end)
@@ -110,7 +126,7 @@
    */
   private void shiftRight(int start, int end) {
 	   for (int j = end; j >= start; j--) {
-			  this.array[(this.start + j + 1) % this.maxLen] = this.array[(this.start + j) % this.maxLen];
+			  move((this.start + j) % this.maxLen, (this.start + j + 1) % this.maxLen);
 		  }
   }
   /**
@@ -121,7 +137,7 @@
    */
   private void shiftLeft(int start, int end) {
 		  for(int j = start; j < end; j++) {
-			  this.array[Math.floorMod(this.start + j -1, this.maxLen)] = this.array[Math.floorMod(this.start + j, this.maxLen)]; 
+			  move(Math.floorMod(this.start + j, this.maxLen), Math.floorMod(this.start + j -1, this.maxLen));
 		  }
   }
   /**
@@ -132,4 +148,102 @@
    private void deleteFirst() {
 	   this.start = (this.start + 1) % this.maxLen;
    }
+  /**
+   * private void set(int index, int k, String s)
+   * stores a new item in array index
+   * Complexity: O(1)
+   */
+  private void set(int index, int k, String s) {
+	   this.array[index] = new Item(k, s);
+	   this.keys[index] = k;
+  }
+  /**
+   * private void move(int from, int to)
+   * copies the item in array index from to array index to
+   * Complexity: O(1)
+   */
+  private void move(int from, int to) {
+	   this.array[to] = this.array[from];
+	   this.keys[to] = this.keys[from];
+  }
+  /**
+   * public int toArrays(int[] keysArr, String[] infoArr)
+   * copies the keys and infos in list order into keysArr and infoArr,
+   * returns the number of items
+   * @pre both arrays have room for n items
+   * Complexity: O(n)
+   */
+  public int toArrays(int[] keysArr, String[] infoArr) {
+	   int first = firstSegment();
+	   System.arraycopy(this.keys, this.start, keysArr, 0, first);
+	   System.arraycopy(this.keys, 0, keysArr, first, this.length - first);
+	   for (int j = 0; j < first; j++) infoArr[j] = this.array[this.start + j].getInfo();
+	   for (int j = first; j < this.length; j++) infoArr[j] = this.array[j - first].getInfo();
+	   return this.length;
+  }
+  /**
+   * public int indexOf(int k)
+   * returns the position of the first item with key k in the list,
+   * or -1 if there is none
+   * Complexity: O(n)
+   */
+  public int indexOf(int k) {
+	   int first = firstSegment();
+	   for (int j = this.start, end = this.start + first; j < end; j++) {
+		   if (this.keys[j] == k) return j - this.start;
+	   }
+	   for (int j = 0, end = this.length - first; j < end; j++) {
+		   if (this.keys[j] == k) return first + j;
+	   }
+	   return -1;
+  }
+  /**
+   * public int countInRange(int lo, int hi)
+   * returns the number of items with lo <= key <= hi
+   * Complexity: O(n)
+   */
+  public int countInRange(int lo, int hi) {
+	   int first = firstSegment();
+	   return countSegment(this.start, this.start + first, lo, hi) + countSegment(0, this.length - first, lo, hi);
+  }
+  /**
+   * public int[] filterByKey(int lo, int hi)
+   * returns the positions of the items with lo <= key <= hi, in list order
+   * Complexity: O(n)
+   */
+  public int[] filterByKey(int lo, int hi) {
+	   int[] positions = new int[countInRange(lo, hi)];
+	   int first = firstSegment();
+	   int count = 0;
+	   for (int j = this.start, end = this.start + first; j < end; j++) {
+		   if (this.keys[j] >= lo && this.keys[j] <= hi) positions[count++] = j - this.start;
+	   }
+	   for (int j = 0, end = this.length - first; j < end; j++) {
+		   if (this.keys[j] >= lo && this.keys[j] <= hi) positions[count++] = first + j;
+	   }
+	   return positions;
+  }
+  /**
+   * private int countSegment(int from, int to, int lo, int hi)
+   * returns the number of keys in array indexes [from, to) with lo <= key <= hi
+   * Complexity: O(to - from)
+   */
+  private int countSegment(int from, int to, int lo, int hi) {
+	   int count = 0;
+	   for (int j = from; j < to; j++) {
+		   int key = this.keys[j];
+		   // no branch, so the loop can be compiled to vector instructions
+		   count += (key >= lo & key <= hi) ? 1 : 0;
+	   }
+	   return count;
+  }
+  /**
+   * private int firstSegment()
+   * returns the number of items from start up to the end of the arrays,
+   * the rest of the list wraps around to array index 0
+   * Complexity: O(1)
+   */
+  private int firstSegment() {
+	   return Math.min(this.length, this.maxLen - this.start);
+  }
  }
@@ -0,0 +1,172 @@
+/**
+ *
+ * CompositeKeyAVLTree
+ *
+ * An AVL tree with distinct (high, low) int pair keys and info,
+ * ordered lexicographically: first by high, then by low.
+ * Both ints are packed into one long so that comparing the packed
+ * longs gives the lexicographic order, and the tree is a LongAVLTree.
+ *
+ */
+
+public class CompositeKeyAVLTree {
+	private LongAVLTree tree;
+
+	/**
+	 *  Complexity: O(1)
+	 */
+	public CompositeKeyAVLTree() {
+		this.tree = new LongAVLTree();
+	}
+
+	/**
+	 * public static long pack(int high, int low)
+	 * returns the long key of the pair (high, low).
+	 * the sign bit of low is flipped so that negative lows
+	 * are ordered before positive ones.
+	 * Complexity: O(1)
+	 */
+	public static long pack(int high, int low) {
+		return ((long) high << 32) | ((low ^ Integer.MIN_VALUE) & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * public static int high(long key)
+	 * returns the high int of a packed key
+	 * Complexity: O(1)
+	 */
+	public static int high(long key) {
+		return (int) (key >> 32);
+	}
+
+	/**
+	 * public static int low(long key)
+	 * returns the low int of a packed key
+	 * Complexity: O(1)
+	 */
+	public static int low(long key) {
+		return ((int) key) ^ Integer.MIN_VALUE;
+	}
+
+	/**
+	 * public boolean empty()
+	 * returns true if and only if the tree is empty
+	 * Complexity: O(1)
+	 */
+	public boolean empty() {
+		return this.tree.empty();
+	}
+
+	/**
+	 * public int size()
+	 * Returns the number of nodes in the tree.
+	 * Complexity: O(1)
+	 */
+	public int size() {
+		return this.tree.size();
+	}
+
+	/**
+	 * public String search(int high, int low)
+	 * returns the info of the item with key (high, low) if it exists in the tree
+	 * otherwise, returns null
+	 * Complexity: O(logn)
+	 */
+	public String search(int high, int low) {
+		return this.tree.search(pack(high, low));
+	}
+
+	/**
+	 * public int insert(int high, int low, String i)
+	 * inserts an item with key (high, low) and info i.
+	 * returns the number of rebalancing operations,
+	 * or -1 if an item with this key already exists in the tree.
+	 * Complexity: O(logn)
+	 */
+	public int insert(int high, int low, String i) {
+		return this.tree.insert(pack(high, low), i);
+	}
+
+	/**
+	 * public int delete(int high, int low)
+	 * deletes the item with key (high, low) if it is there.
+	 * returns the number of rebalancing operations,
+	 * or -1 if the key was not found in the tree.
+	 * Complexity: O(logn)
+	 */
+	public int delete(int high, int low) {
+		return this.tree.delete(pack(high, low));
+	}
+
+	/**
+	 * public String min()
+	 * Returns the info of the item with the smallest key in the tree,
+	 * or null if the tree is empty
+	 * Complexity: O(1)
+	 */
+	public String min() {
+		return this.tree.min();
+	}
+
+	/**
+	 * public String max()
+	 * Returns the info of the item with the largest key in the tree,
+	 * or null if the tree is empty
+	 * Complexity: O(1)
+	 */
+	public String max() {
+		return this.tree.max();
+	}
+
+	/**
+	 * public int rank(int high, int low)
+	 * returns the number of keys in the tree that are smaller than or equal to (high, low)
+	 * Complexity: O(logn)
+	 */
+	public int rank(int high, int low) {
+		return this.tree.rank(pack(high, low));
+	}
+
+	/**
+	 * public int countInRange(int high, int fromLow, int toLow)
+	 * returns the number of keys (high, l) with fromLow <= l <= toLow,
+	 * e.g. the number of events of a tenant in a time range
+	 * Complexity: O(logn)
+	 */
+	public int countInRange(int high, int fromLow, int toLow) {
+		if (fromLow > toLow) return 0;
+		long first = pack(high, fromLow);
+		// number of keys smaller than (high, fromLow)
+		int below = (first == Long.MIN_VALUE) ? 0 : this.tree.rank(first - 1);
+		return this.tree.rank(pack(high, toLow)) - below;
+	}
+
+	/**
+	 * public LongAVLTree.LongAVLNode treeSelect(int rank)
+	 * returns the node with the given rank, its key can be unpacked with
+	 * high and low. returns null if rank is not in 1..size()
+	 * Complexity: O(logn)
+	 */
+	public LongAVLTree.LongAVLNode treeSelect(int rank) {
+		return this.tree.treeSelect(rank);
+	}
+
+	/**
+	 * public long[] keysToArray()
+	 * Returns a sorted array which contains all packed keys in the tree
+	 * Complexity: O(n)
+	 */
+	public long[] keysToArray() {
+		return this.tree.keysToArray();
+	}
+
+	/**
+	 * public String[] infoToArray()
+	 * Returns an array which contains all info in the tree,
+	 * sorted by their respective keys
+	 * Complexity: O(n)
+	 */
+	public String[] infoToArray() {
+		return this.tree.infoToArray();
+	}
+}
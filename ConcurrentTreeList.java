@@ -0,0 +1,199 @@
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ *
+ * Concurrent tree list
+ *
+ * A thread safe Tree list with key and info.
+ * retrieve first tries an optimistic read of the tree (a StampedLock
+ * optimistic stamp validated after the select), and falls back to a read
+ * lock if a writer got in. Writers queue their inserts and deletes, and
+ * whichever writer holds the write lock applies all the queued updates in
+ * one exclusive section, so many writers share a single lock handoff.
+ *
+ */
+
+public class ConcurrentTreeList {
+	// tries of the write lock before a writer blocks on it
+	private static final int SPINS = 64;
+	// bound on the optimistic walk, above the height of any AVL tree with int size
+	private static final int MAX_DEPTH = 64;
+
+	private AVLTree avlTree;
+	private StampedLock lock;
+	private ConcurrentLinkedQueue<Update> pending;
+
+	/**
+	 * public ConcurrentTreeList()
+	 * constructor.
+	 * Complexity: O(1)
+	 */
+	public ConcurrentTreeList() {
+		this.avlTree = new AVLTree();
+		this.lock = new StampedLock();
+		this.pending = new ConcurrentLinkedQueue<>();
+	}
+
+	/**
+	 * public Item retrieve(int i)
+	 * returns the item in the ith position if it exists in the list. otherwise,
+	 * returns null
+	 * Complexity: O(logn)
+	 */
+	public Item retrieve(int i) {
+		long stamp = this.lock.tryOptimisticRead();
+		if (stamp != 0) {
+			Item item = optimisticRetrieve(i);
+			if (this.lock.validate(stamp)) return item;
+		}
+		stamp = this.lock.readLock();
+		try {
+			if (i < 0 || i > this.avlTree.size() - 1) return null;
+			AVLTree.IAVLNode node = this.avlTree.treeSelect(i + 1);
+			return new Item(node.getKey(), node.getValue());
+		} finally {
+			this.lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * public int size()
+	 * returns the number of items in the list
+	 * Complexity: O(1)
+	 */
+	public int size() {
+		long stamp = this.lock.tryOptimisticRead();
+		int size = this.avlTree.size();
+		if (this.lock.validate(stamp)) return size;
+		stamp = this.lock.readLock();
+		try {
+			return this.avlTree.size();
+		} finally {
+			this.lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * public int insert(int i, int k, String s)
+	 * inserts an item to the ith position in list with key k and info s. returns -1
+	 * if i<0 or i>n otherwise return 0. n is the size when the insert is applied.
+	 * Complexity: O(logn) amortized over the batch
+	 */
+	public int insert(int i, int k, String s) {
+		return submit(new Update(true, i, k, s));
+	}
+
+	/**
+	 * public int delete(int i)
+	 * deletes an item in the ith posittion from the list. returns -1 if i<0 or
+	 * i>n-1 otherwise returns 0. n is the size when the delete is applied.
+	 * Complexity: O(logn) amortized over the batch
+	 */
+	public int delete(int i) {
+		return submit(new Update(false, i, 0, null));
+	}
+
+	/**
+	 * private Item optimisticRetrieve(int i)
+	 * the select of retrieve without a lock. a concurrent writer may leave the
+	 * tree inconsistent while it is read, so the walk is bounded and any
+	 * failure returns null; the result is only used if the stamp validates.
+	 * Complexity: O(logn)
+	 */
+	private Item optimisticRetrieve(int i) {
+		try {
+			if (i < 0 || i > this.avlTree.size() - 1) return null;
+			AVLTree.IAVLNode node = this.avlTree.getRoot();
+			int rank = i + 1;
+			for (int depth = 0; depth < MAX_DEPTH && node != null; depth++) {
+				AVLTree.IAVLNode left = node.getLeft();
+				int counter = (left == null ? 0 : ((AVLTree.AVLNode) left).getSize()) + 1;
+				if (rank == counter) return new Item(node.getKey(), node.getValue());
+				if (rank < counter) {
+					node = left;
+				} else {
+					rank -= counter;
+					node = node.getRight();
+				}
+			}
+			return null;
+		} catch (RuntimeException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * private int submit(Update update)
+	 * queues an update and waits until it is applied, by this thread or
+	 * by another writer that holds the write lock. returns its result.
+	 * Complexity: O(logn) amortized over the batch
+	 */
+	private int submit(Update update) {
+		this.pending.add(update);
+		int tries = 0;
+		while (!update.done) {
+			long stamp = (tries++ < SPINS) ? this.lock.tryWriteLock() : this.lock.writeLock();
+			if (stamp == 0) {
+				Thread.onSpinWait();
+				continue;
+			}
+			try {
+				applyPending();
+			} finally {
+				this.lock.unlockWrite(stamp);
+			}
+		}
+		return update.result;
+	}
+
+	/**
+	 * private void applyPending()
+	 * applies all the queued updates in queue order
+	 * @pre the write lock is held
+	 * Complexity: O(k logn) for k queued updates
+	 */
+	private void applyPending() {
+		Update update;
+		while ((update = this.pending.poll()) != null) {
+			int n = this.avlTree.size();
+			if (update.insert) {
+				if (update.i < 0 || update.i > n) {
+					update.result = -1;
+				} else {
+					this.avlTree.insertByRank(update.i, update.k, update.s);
+					update.result = 0;
+				}
+			} else {
+				if (update.i < 0 || update.i > n - 1) {
+					update.result = -1;
+				} else {
+					this.avlTree.deleteByRank(update.i);
+					update.result = 0;
+				}
+			}
+			update.done = true;
+		}
+	}
+
+	/**
+	 * private static class Update
+	 * a queued insert or delete and its result
+	 */
+	private static class Update {
+		private final boolean insert;
+		private final int i;
+		private final int k;
+		private final String s;
+		private int result;
+		// written after result, so a waiting writer that sees done sees result
+		private volatile boolean done;
+
+		private Update(boolean insert, int i, int k, String s) {
+			this.insert = insert;
+			this.i = i;
+			this.k = k;
+			this.s = s;
+		}
+	}
+}
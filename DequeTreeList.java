@@ -0,0 +1,209 @@
+/**
+ *
+ * Deque tree list
+ *
+ * A Tree list for workloads that mostly insert and delete at the two ends.
+ * The items are a front buffer, an AVL tree used by rank (the core) and a
+ * back buffer, in list order. The buffers are CircularLists of blockSize
+ * items, so inserts and deletes at position 0 and n take O(1) in the
+ * buffer. A full buffer is built into a balanced tree and joined to the
+ * core in one concat, and an empty buffer takes blockSize / 2 items from
+ * the core with one splitByRank. Each costs O(blockSize + logn), once per
+ * blockSize / 2 end operations, so end operations take O(1 + logn / blockSize)
+ * amortized, O(1) for any practical n with the default block size.
+ * retrieve stays O(logn), and inserts and deletes inside the list cost
+ * O(logn + blockSize).
+ *
+ */
+
+public class DequeTreeList {
+	private static final int DEFAULT_BLOCK_SIZE = 64;
+
+	private int blockSize;
+	private CircularList front;
+	private AVLTree core;
+	private CircularList back;
+
+	/**
+	 * public DequeTreeList()
+	 * constructor.
+	 * Complexity: O(1)
+	 */
+	public DequeTreeList() {
+		this(DEFAULT_BLOCK_SIZE);
+	}
+
+	/**
+	 * public DequeTreeList(int blockSize)
+	 * constructor, the end buffers hold blockSize items (at least 2).
+	 * Complexity: O(blockSize)
+	 */
+	public DequeTreeList(int blockSize) {
+		this.blockSize = Math.max(2, blockSize);
+		this.front = new CircularList(this.blockSize);
+		this.core = new AVLTree();
+		this.back = new CircularList(this.blockSize);
+	}
+
+	/**
+	 * public int size()
+	 * returns the number of items in the list
+	 * Complexity: O(1)
+	 */
+	public int size() {
+		return this.front.size() + this.core.size() + this.back.size();
+	}
+
+	/**
+	 * public Item retrieve(int i)
+	 * returns the item in the ith position if it exists in the list. otherwise,
+	 * returns null
+	 * Complexity: O(logn)
+	 */
+	public Item retrieve(int i) {
+		if (i < 0 || i > size() - 1)
+			return null;
+		if (i < this.front.size())
+			return this.front.retrieve(i);
+		i -= this.front.size();
+		if (i < this.core.size()) {
+			AVLTree.IAVLNode node = this.core.treeSelect(i + 1);
+			return new Item(node.getKey(), node.getValue());
+		}
+		return this.back.retrieve(i - this.core.size());
+	}
+
+	/**
+	 * public int insert(int i, int k, String s)
+	 * inserts an item to the ith position in list with key k and info s.
+	 * returns -1 if i<0 or i>n otherwise return 0.
+	 * Complexity: O(1) amortized for i = 0 or i = n, otherwise O(logn + blockSize)
+	 */
+	public int insert(int i, int k, String s) {
+		int n = size();
+		if (i < 0 || i > n)
+			return -1;
+		if (i <= this.front.size() && this.front.size() < this.blockSize) {
+			this.front.insert(i, k, s);
+			return 0;
+		}
+		int backStart = n - this.back.size();
+		if (i >= backStart && this.back.size() < this.blockSize) {
+			this.back.insert(i - backStart, k, s);
+			return 0;
+		}
+		// the position is in the core, or in a full buffer that moves to the core first.
+		// an insert at an end then goes to the emptied buffer
+		if (i <= this.front.size()) {
+			flushFront();
+			if (i == 0) {
+				this.front.insert(0, k, s);
+				return 0;
+			}
+		} else if (i >= backStart) {
+			flushBack();
+			if (i == n) {
+				this.back.insert(0, k, s);
+				return 0;
+			}
+		}
+		this.core.insertByRank(i - this.front.size(), k, s);
+		return 0;
+	}
+
+	/**
+	 * public int delete(int i)
+	 * deletes an item in the ith posittion from the list. returns -1 if i<0 or
+	 * i>n-1 otherwise returns 0.
+	 * Complexity: O(1) amortized for i = 0 or i = n-1, otherwise O(logn + blockSize)
+	 */
+	public int delete(int i) {
+		int n = size();
+		if (i < 0 || i > n - 1)
+			return -1;
+		if (i == 0 && this.front.size() == 0 && !this.core.empty())
+			refillFront();
+		if (i == n - 1 && this.back.size() == 0 && !this.core.empty())
+			refillBack();
+		if (i < this.front.size()) {
+			this.front.delete(i);
+			return 0;
+		}
+		i -= this.front.size();
+		if (i < this.core.size()) {
+			this.core.deleteByRank(i);
+			return 0;
+		}
+		this.back.delete(i - this.core.size());
+		return 0;
+	}
+
+	/**
+	 * private void flushFront()
+	 * moves the front buffer's items to the start of the core
+	 * Complexity: O(blockSize + logn)
+	 */
+	private void flushFront() {
+		AVLTree block = drain(this.front);
+		block.concat(this.core);
+		this.core = block;
+	}
+
+	/**
+	 * private void flushBack()
+	 * moves the back buffer's items to the end of the core
+	 * Complexity: O(blockSize + logn)
+	 */
+	private void flushBack() {
+		this.core.concat(drain(this.back));
+	}
+
+	/**
+	 * private void refillFront()
+	 * moves the first blockSize / 2 items of the core to the empty front buffer
+	 * Complexity: O(blockSize + logn)
+	 */
+	private void refillFront() {
+		AVLTree rest = this.core.splitByRank(this.blockSize / 2);
+		fill(this.front, this.core);
+		this.core = rest;
+	}
+
+	/**
+	 * private void refillBack()
+	 * moves the last blockSize / 2 items of the core to the empty back buffer
+	 * Complexity: O(blockSize + logn)
+	 */
+	private void refillBack() {
+		AVLTree last = this.core.splitByRank(this.core.size() - this.blockSize / 2);
+		fill(this.back, last);
+	}
+
+	/**
+	 * private static AVLTree drain(CircularList buffer)
+	 * empties a buffer into a new balanced tree of its items in list order
+	 * Complexity: O(blockSize)
+	 */
+	private static AVLTree drain(CircularList buffer) {
+		int n = buffer.size();
+		int[] keys = new int[n];
+		String[] infos = new String[n];
+		buffer.toArrays(keys, infos);
+		while (buffer.size() > 0) buffer.delete(buffer.size() - 1);
+		return new AVLTree(keys, infos);
+	}
+
+	/**
+	 * private static void fill(CircularList buffer, AVLTree items)
+	 * appends the items of a tree used by rank to an empty buffer
+	 * @pre items.size() <= the buffer's capacity
+	 * Complexity: O(blockSize)
+	 */
+	private static void fill(CircularList buffer, AVLTree items) {
+		int n = items.size();
+		int[] keys = new int[n];
+		String[] infos = new String[n];
+		items.toArrays(keys, infos);
+		for (int j = 0; j < n; j++) buffer.insert(j, keys[j], infos[j]);
+	}
+}
@@ -0,0 +1,232 @@
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongSupplier;
+
+/**
+ *
+ * Expiring AVL tree
+ *
+ * A thread safe AVLTree whose items can have a time to live.
+ * Deadlines are kept in a TimingWheel, so expiring an item costs O(1)
+ * amortized plus its delete, without scanning the tree. Expired items are
+ * removed by expire (the reaper, e.g. run periodically by a scheduled
+ * executor), which deletes them in batches and releases the write lock
+ * between batches so readers are never held for long. Until an expired
+ * item is reaped, search already treats it as absent.
+ *
+ */
+
+public class ExpiringAVLTree {
+	private AVLTree tree;
+	private ReentrantReadWriteLock lock;
+	private TimingWheel wheel;
+	// the deadline in nanoseconds of every item with a time to live
+	private IntLongHashMap deadlines;
+	private LongSupplier clock;
+	private long startNanos;
+	private long tickNanos;
+	private int batchSize;
+	// keys fired by the wheel that were not checked and deleted yet
+	private int[] due;
+	private int dueLength;
+
+	/**
+	 * public ExpiringAVLTree(long tickNanos, int batchSize)
+	 * constructor, deadlines are rounded up to tickNanos, and expire deletes
+	 * at most batchSize items per write lock.
+	 * Complexity: O(1)
+	 */
+	public ExpiringAVLTree(long tickNanos, int batchSize) {
+		this(tickNanos, batchSize, System::nanoTime);
+	}
+
+	/**
+	 * public ExpiringAVLTree(long tickNanos, int batchSize, LongSupplier clock)
+	 * constructor with a clock in nanoseconds (System.nanoTime by default).
+	 * Complexity: O(1)
+	 */
+	public ExpiringAVLTree(long tickNanos, int batchSize, LongSupplier clock) {
+		this.tree = new AVLTree();
+		this.lock = new ReentrantReadWriteLock();
+		this.wheel = new TimingWheel(0);
+		this.deadlines = new IntLongHashMap();
+		this.clock = clock;
+		this.startNanos = clock.getAsLong();
+		this.tickNanos = Math.max(1, tickNanos);
+		this.batchSize = Math.max(1, batchSize);
+		this.due = new int[16];
+		this.dueLength = 0;
+	}
+
+	/**
+	 * public String search(int k)
+	 * returns the info of an item with key k if it exists in the tree and has
+	 * not expired, otherwise returns null
+	 * Complexity: O(logn)
+	 */
+	public String search(int k) {
+		this.lock.readLock().lock();
+		try {
+			if (expired(k, this.clock.getAsLong())) return null;
+			return this.tree.search(k);
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * public int insert(int k, String i)
+	 * inserts an item that does not expire, see AVLTree.insert
+	 * Complexity: O(logn)
+	 */
+	public int insert(int k, String i) {
+		return insert(k, i, 0);
+	}
+
+	/**
+	 * public int insert(int k, String i, long ttlNanos)
+	 * inserts an item that expires ttlNanos from now (ttlNanos <= 0 never expires).
+	 * returns -1 if an item with key k exists, see AVLTree.insert.
+	 * an expired item that was not reaped yet is replaced.
+	 * Complexity: O(logn)
+	 */
+	public int insert(int k, String i, long ttlNanos) {
+		this.lock.writeLock().lock();
+		try {
+			long now = this.clock.getAsLong();
+			if (expired(k, now)) {
+				this.deadlines.remove(k);
+				this.tree.delete(k);
+			}
+			int result = this.tree.insert(k, i);
+			if (result != -1 && ttlNanos > 0) schedule(k, now + ttlNanos);
+			return result;
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * public int setTtl(int k, long ttlNanos)
+	 * makes the item with key k expire ttlNanos from now
+	 * (ttlNanos <= 0 never expires). returns -1 if there is no such item
+	 * (or it expired), otherwise 0.
+	 * Complexity: O(logn)
+	 */
+	public int setTtl(int k, long ttlNanos) {
+		this.lock.writeLock().lock();
+		try {
+			long now = this.clock.getAsLong();
+			if (expired(k, now) || this.tree.search(k) == null) return -1;
+			// the old deadline in the wheel becomes stale
+			if (ttlNanos > 0) schedule(k, now + ttlNanos);
+			else this.deadlines.remove(k);
+			return 0;
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * public int delete(int k)
+	 * deletes an item, see AVLTree.delete
+	 * Complexity: O(logn)
+	 */
+	public int delete(int k) {
+		this.lock.writeLock().lock();
+		try {
+			this.deadlines.remove(k);
+			return this.tree.delete(k);
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * public int size()
+	 * returns the number of items, including expired items that were not reaped yet
+	 * Complexity: O(1)
+	 */
+	public int size() {
+		this.lock.readLock().lock();
+		try {
+			return this.tree.size();
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * public int expire()
+	 * the reaper: advances the wheel to now and deletes the items that
+	 * expired, at most batchSize per write lock. an item is reaped once the
+	 * tick of its deadline passed, at most one tick after it expired.
+	 * returns the number of deleted items
+	 * Complexity: O(1) amortized per expired item, plus O(logn) per delete
+	 */
+	public int expire() {
+		int deleted = 0;
+		boolean more = true;
+		while (more) {
+			this.lock.writeLock().lock();
+			try {
+				long now = this.clock.getAsLong();
+				if (this.dueLength == 0) this.wheel.advance(toTick(now), this::addDue);
+				int end = Math.max(0, this.dueLength - this.batchSize);
+				while (this.dueLength > end) {
+					int k = this.due[--this.dueLength];
+					// a fired key is stale if it was deleted or got a new deadline since
+					if (expired(k, now)) {
+						this.deadlines.remove(k);
+						this.tree.delete(k);
+						deleted++;
+					}
+				}
+				more = this.dueLength > 0;
+			} finally {
+				this.lock.writeLock().unlock();
+			}
+		}
+		return deleted;
+	}
+
+	/**
+	 * private boolean expired(int k, long now)
+	 * returns true if the item with key k has a deadline that is not after now
+	 * Complexity: O(1) expected
+	 */
+	private boolean expired(int k, long now) {
+		// a key without a deadline reads as the farthest time after now
+		return this.deadlines.get(k, now + Long.MAX_VALUE) - now <= 0;
+	}
+
+	/**
+	 * private void schedule(int k, long deadlineNanos)
+	 * sets an item's deadline and adds it to the wheel
+	 * @pre the write lock is held
+	 * Complexity: O(1) amortized
+	 */
+	private void schedule(int k, long deadlineNanos) {
+		this.deadlines.put(k, deadlineNanos);
+		// rounded up, so the item has expired when its tick fires
+		this.wheel.schedule(k, Math.floorDiv(deadlineNanos - this.startNanos + this.tickNanos - 1, this.tickNanos));
+	}
+
+	/**
+	 * private long toTick(long nanos)
+	 * returns the wheel's tick of a clock time, rounded down
+	 * Complexity: O(1)
+	 */
+	private long toTick(long nanos) {
+		return Math.floorDiv(nanos - this.startNanos, this.tickNanos);
+	}
+
+	/**
+	 * private void addDue(int key, long deadlineTick)
+	 * collects a key fired by the wheel
+	 * Complexity: O(1) amortized
+	 */
+	private void addDue(int key, long deadlineTick) {
+		if (this.dueLength == this.due.length) this.due = java.util.Arrays.copyOf(this.due, this.dueLength * 2);
+		this.due[this.dueLength++] = key;
+	}
+}
@@ -0,0 +1,224 @@
+/**
+ *
+ * Int clock cache
+ *
+ * A bounded cache from int keys to String values in primitive arrays:
+ * an open addressing table with linear probing, evicting with the CLOCK
+ * policy (a hand sweeps the table, clearing reference bits, and evicts the
+ * first entry that was not used since the hand last passed it).
+ * Removal uses backward shift deletion, so there are no tombstones.
+ *
+ */
+
+public class IntClockCache {
+	private int capacity;
+	private int mask;
+	private int[] keys;
+	private String[] values;
+	private boolean[] used;
+	private boolean[] referenced;
+	private int size;
+	private int hand;
+	private long evictions;
+	private Slots slots;
+
+	/**
+	 * public IntClockCache(int capacity)
+	 * constructor, the cache holds at most capacity entries.
+	 * the table is at least twice as big, to keep the probes short.
+	 * Complexity: O(capacity)
+	 */
+	public IntClockCache(int capacity) {
+		this.capacity = Math.max(1, capacity);
+		int tableSize = Integer.highestOneBit(this.capacity * 2 - 1) << 1;
+		this.mask = tableSize - 1;
+		this.keys = new int[tableSize];
+		this.values = new String[tableSize];
+		this.used = new boolean[tableSize];
+		this.referenced = new boolean[tableSize];
+		this.size = 0;
+		this.hand = 0;
+		this.evictions = 0;
+		this.slots = new Slots();
+	}
+
+	/**
+	 * public int size()
+	 * returns the number of cached entries
+	 * Complexity: O(1)
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * public long getEvictionCount()
+	 * returns the number of entries evicted to make room
+	 * Complexity: O(1)
+	 */
+	public long getEvictionCount() {
+		return this.evictions;
+	}
+
+	/**
+	 * public boolean contains(int k)
+	 * returns true if k is cached
+	 * Complexity: O(1) expected
+	 */
+	public boolean contains(int k) {
+		return slotOf(k) >= 0;
+	}
+
+	/**
+	 * public String get(int k)
+	 * returns the value cached for k and marks it as used, or null.
+	 * a cached null value also returns null, use get(k, missing) to tell them apart.
+	 * Complexity: O(1) expected
+	 */
+	public String get(int k) {
+		return get(k, null);
+	}
+
+	/**
+	 * public String get(int k, String missing)
+	 * returns the value cached for k and marks it as used, or missing if k
+	 * is not cached. with a missing string that is never cached (compared
+	 * by identity), a hit and a miss are told apart in a single probe.
+	 * Complexity: O(1) expected
+	 */
+	public String get(int k, String missing) {
+		int slot = slotOf(k);
+		if (slot < 0) return missing;
+		this.referenced[slot] = true;
+		return this.values[slot];
+	}
+
+	/**
+	 * public void put(int k, String v)
+	 * caches v for k, evicting an entry if the cache is full
+	 * Complexity: O(1) expected, amortized over the clock sweeps
+	 */
+	public void put(int k, String v) {
+		int slot = slotOf(k);
+		if (slot >= 0) {
+			this.values[slot] = v;
+			this.referenced[slot] = true;
+			return;
+		}
+		if (this.size == this.capacity) evict();
+		slot = hash(k);
+		while (this.used[slot]) slot = (slot + 1) & this.mask;
+		this.keys[slot] = k;
+		this.values[slot] = v;
+		this.used[slot] = true;
+		// a new entry has to survive one sweep without being used
+		this.referenced[slot] = false;
+		this.size++;
+	}
+
+	/**
+	 * public boolean remove(int k)
+	 * removes k from the cache, returns true if it was cached
+	 * Complexity: O(1) expected
+	 */
+	public boolean remove(int k) {
+		int slot = slotOf(k);
+		if (slot < 0) return false;
+		removeSlot(slot);
+		return true;
+	}
+
+	/**
+	 * public void clear()
+	 * removes all the entries
+	 * Complexity: O(capacity)
+	 */
+	public void clear() {
+		java.util.Arrays.fill(this.used, false);
+		java.util.Arrays.fill(this.values, null);
+		java.util.Arrays.fill(this.referenced, false);
+		this.size = 0;
+	}
+
+	/**
+	 * private int slotOf(int k)
+	 * returns the slot of k, or -1 if it is not cached
+	 * Complexity: O(1) expected
+	 */
+	private int slotOf(int k) {
+		int slot = hash(k);
+		while (this.used[slot]) {
+			if (this.keys[slot] == k) return slot;
+			slot = (slot + 1) & this.mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * private void evict()
+	 * advances the clock hand to the first used entry without a reference
+	 * bit, clearing the bits it passes, and removes that entry
+	 * Complexity: O(1) amortized
+	 */
+	private void evict() {
+		while (true) {
+			int slot = this.hand;
+			this.hand = (this.hand + 1) & this.mask;
+			if (!this.used[slot]) continue;
+			if (this.referenced[slot]) {
+				this.referenced[slot] = false;
+			} else {
+				removeSlot(slot);
+				this.evictions++;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * private void removeSlot(int slot)
+	 * empties a slot and shifts back the following entries of its probe
+	 * run that would not be found past the hole
+	 * Complexity: O(1) expected
+	 */
+	private void removeSlot(int slot) {
+		OpenAddressing.removeSlot(this.slots, this.mask, slot);
+		this.size--;
+	}
+
+	/**
+	 * private int hash(int k)
+	 * returns the home slot of k
+	 * Complexity: O(1)
+	 */
+	private int hash(int k) {
+		int h = k * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & this.mask;
+	}
+
+	/**
+	 * private class Slots
+	 * the cache's table, for OpenAddressing.removeSlot
+	 */
+	private class Slots implements OpenAddressing.Table {
+		public boolean occupied(int slot) {
+			return used[slot];
+		}
+
+		public int home(int slot) {
+			return hash(keys[slot]);
+		}
+
+		public void move(int from, int to) {
+			keys[to] = keys[from];
+			values[to] = values[from];
+			referenced[to] = referenced[from];
+		}
+
+		public void clear(int slot) {
+			used[slot] = false;
+			values[slot] = null;
+			referenced[slot] = false;
+		}
+	}
+}
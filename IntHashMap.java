@@ -0,0 +1,192 @@
+/**
+ *
+ * Int hash map
+ *
+ * A map from int keys to values without boxing: an open addressing table
+ * with linear probing that doubles when it is half full. Removal uses
+ * backward shift deletion, so there are no tombstones.
+ *
+ */
+
+public class IntHashMap<V> {
+	private int mask;
+	private int[] keys;
+	private Object[] values;
+	private boolean[] used;
+	private int size;
+	private Slots slots;
+
+	/**
+	 * public IntHashMap()
+	 * constructor.
+	 * Complexity: O(1)
+	 */
+	public IntHashMap() {
+		this(16);
+	}
+
+	/**
+	 * public IntHashMap(int expectedSize)
+	 * constructor, room for expectedSize entries without growing.
+	 * Complexity: O(expectedSize)
+	 */
+	public IntHashMap(int expectedSize) {
+		int tableSize = Integer.highestOneBit(Math.max(expectedSize, 4) * 2 - 1) << 1;
+		this.mask = tableSize - 1;
+		this.keys = new int[tableSize];
+		this.values = new Object[tableSize];
+		this.used = new boolean[tableSize];
+		this.size = 0;
+		this.slots = new Slots();
+	}
+
+	/**
+	 * public int size()
+	 * returns the number of entries
+	 * Complexity: O(1)
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * public boolean containsKey(int k)
+	 * returns true if k is in the map
+	 * Complexity: O(1) expected
+	 */
+	public boolean containsKey(int k) {
+		return slotOf(k) >= 0;
+	}
+
+	/**
+	 * public V get(int k)
+	 * returns the value of k, or null if k is not in the map
+	 * Complexity: O(1) expected
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(int k) {
+		int slot = slotOf(k);
+		return (slot < 0) ? null : (V) this.values[slot];
+	}
+
+	/**
+	 * public V put(int k, V v)
+	 * maps k to v, returns the previous value of k or null
+	 * Complexity: O(1) expected, amortized over the growing
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(int k, V v) {
+		int slot = slotOf(k);
+		if (slot >= 0) {
+			V old = (V) this.values[slot];
+			this.values[slot] = v;
+			return old;
+		}
+		if (2 * (this.size + 1) > this.keys.length) grow();
+		slot = hash(k);
+		while (this.used[slot]) slot = (slot + 1) & this.mask;
+		this.keys[slot] = k;
+		this.values[slot] = v;
+		this.used[slot] = true;
+		this.size++;
+		return null;
+	}
+
+	/**
+	 * public V remove(int k)
+	 * removes k from the map, returns its value or null if it was not there
+	 * Complexity: O(1) expected
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(int k) {
+		int slot = slotOf(k);
+		if (slot < 0) return null;
+		V old = (V) this.values[slot];
+		OpenAddressing.removeSlot(this.slots, this.mask, slot);
+		this.size--;
+		return old;
+	}
+
+	/**
+	 * public void clear()
+	 * removes all the entries
+	 * Complexity: O(capacity)
+	 */
+	public void clear() {
+		java.util.Arrays.fill(this.used, false);
+		java.util.Arrays.fill(this.values, null);
+		this.size = 0;
+	}
+
+	/**
+	 * private int slotOf(int k)
+	 * returns the slot of k, or -1 if it is not in the map
+	 * Complexity: O(1) expected
+	 */
+	private int slotOf(int k) {
+		int slot = hash(k);
+		while (this.used[slot]) {
+			if (this.keys[slot] == k) return slot;
+			slot = (slot + 1) & this.mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * private void grow()
+	 * doubles the table and reinserts all the entries
+	 * Complexity: O(capacity)
+	 */
+	private void grow() {
+		int[] oldKeys = this.keys;
+		Object[] oldValues = this.values;
+		boolean[] oldUsed = this.used;
+		int tableSize = oldKeys.length * 2;
+		this.mask = tableSize - 1;
+		this.keys = new int[tableSize];
+		this.values = new Object[tableSize];
+		this.used = new boolean[tableSize];
+		for (int j = 0; j < oldKeys.length; j++) {
+			if (!oldUsed[j]) continue;
+			int slot = hash(oldKeys[j]);
+			while (this.used[slot]) slot = (slot + 1) & this.mask;
+			this.keys[slot] = oldKeys[j];
+			this.values[slot] = oldValues[j];
+			this.used[slot] = true;
+		}
+	}
+
+	/**
+	 * private int hash(int k)
+	 * returns the home slot of k
+	 * Complexity: O(1)
+	 */
+	private int hash(int k) {
+		int h = k * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & this.mask;
+	}
+
+	/**
+	 * private class Slots
+	 * the map's table, for OpenAddressing.removeSlot
+	 */
+	private class Slots implements OpenAddressing.Table {
+		public boolean occupied(int slot) {
+			return used[slot];
+		}
+
+		public int home(int slot) {
+			return hash(keys[slot]);
+		}
+
+		public void move(int from, int to) {
+			keys[to] = keys[from];
+			values[to] = values[from];
+		}
+
+		public void clear(int slot) {
+			used[slot] = false;
+			values[slot] = null;
+		}
+	}
+}
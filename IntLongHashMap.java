@@ -0,0 +1,185 @@
+/**
+ *
+ * Int long hash map
+ *
+ * A map from int keys to long values in primitive arrays, so neither the
+ * keys nor the values are boxed: an open addressing table with linear
+ * probing that doubles when it is half full. Removal uses backward shift
+ * deletion (OpenAddressing), so there are no tombstones.
+ *
+ */
+
+public class IntLongHashMap {
+	private int mask;
+	private int[] keys;
+	private long[] values;
+	private boolean[] used;
+	private int size;
+	private Slots slots;
+
+	/**
+	 * public IntLongHashMap()
+	 * constructor.
+	 * Complexity: O(1)
+	 */
+	public IntLongHashMap() {
+		this(16);
+	}
+
+	/**
+	 * public IntLongHashMap(int expectedSize)
+	 * constructor, room for expectedSize entries without growing.
+	 * Complexity: O(expectedSize)
+	 */
+	public IntLongHashMap(int expectedSize) {
+		int tableSize = Integer.highestOneBit(Math.max(expectedSize, 4) * 2 - 1) << 1;
+		this.mask = tableSize - 1;
+		this.keys = new int[tableSize];
+		this.values = new long[tableSize];
+		this.used = new boolean[tableSize];
+		this.size = 0;
+		this.slots = new Slots();
+	}
+
+	/**
+	 * public int size()
+	 * returns the number of entries
+	 * Complexity: O(1)
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * public boolean containsKey(int k)
+	 * returns true if k is in the map
+	 * Complexity: O(1) expected
+	 */
+	public boolean containsKey(int k) {
+		return slotOf(k) >= 0;
+	}
+
+	/**
+	 * public long get(int k, long missing)
+	 * returns the value of k, or missing if k is not in the map
+	 * Complexity: O(1) expected
+	 */
+	public long get(int k, long missing) {
+		int slot = slotOf(k);
+		return (slot < 0) ? missing : this.values[slot];
+	}
+
+	/**
+	 * public void put(int k, long v)
+	 * maps k to v
+	 * Complexity: O(1) expected, amortized over the growing
+	 */
+	public void put(int k, long v) {
+		int slot = slotOf(k);
+		if (slot >= 0) {
+			this.values[slot] = v;
+			return;
+		}
+		if (2 * (this.size + 1) > this.keys.length) grow();
+		slot = hash(k);
+		while (this.used[slot]) slot = (slot + 1) & this.mask;
+		this.keys[slot] = k;
+		this.values[slot] = v;
+		this.used[slot] = true;
+		this.size++;
+	}
+
+	/**
+	 * public boolean remove(int k)
+	 * removes k from the map, returns true if it was there
+	 * Complexity: O(1) expected
+	 */
+	public boolean remove(int k) {
+		int slot = slotOf(k);
+		if (slot < 0) return false;
+		OpenAddressing.removeSlot(this.slots, this.mask, slot);
+		this.size--;
+		return true;
+	}
+
+	/**
+	 * public void clear()
+	 * removes all the entries
+	 * Complexity: O(capacity)
+	 */
+	public void clear() {
+		java.util.Arrays.fill(this.used, false);
+		this.size = 0;
+	}
+
+	/**
+	 * private int slotOf(int k)
+	 * returns the slot of k, or -1 if it is not in the map
+	 * Complexity: O(1) expected
+	 */
+	private int slotOf(int k) {
+		int slot = hash(k);
+		while (this.used[slot]) {
+			if (this.keys[slot] == k) return slot;
+			slot = (slot + 1) & this.mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * private void grow()
+	 * doubles the table and reinserts all the entries
+	 * Complexity: O(capacity)
+	 */
+	private void grow() {
+		int[] oldKeys = this.keys;
+		long[] oldValues = this.values;
+		boolean[] oldUsed = this.used;
+		int tableSize = oldKeys.length * 2;
+		this.mask = tableSize - 1;
+		this.keys = new int[tableSize];
+		this.values = new long[tableSize];
+		this.used = new boolean[tableSize];
+		for (int j = 0; j < oldKeys.length; j++) {
+			if (!oldUsed[j]) continue;
+			int slot = hash(oldKeys[j]);
+			while (this.used[slot]) slot = (slot + 1) & this.mask;
+			this.keys[slot] = oldKeys[j];
+			this.values[slot] = oldValues[j];
+			this.used[slot] = true;
+		}
+	}
+
+	/**
+	 * private int hash(int k)
+	 * returns the home slot of k
+	 * Complexity: O(1)
+	 */
+	private int hash(int k) {
+		int h = k * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & this.mask;
+	}
+
+	/**
+	 * private class Slots
+	 * the map's table, for OpenAddressing.removeSlot
+	 */
+	private class Slots implements OpenAddressing.Table {
+		public boolean occupied(int slot) {
+			return used[slot];
+		}
+
+		public int home(int slot) {
+			return hash(keys[slot]);
+		}
+
+		public void move(int from, int to) {
+			keys[to] = keys[from];
+			values[to] = values[from];
+		}
+
+		public void clear(int slot) {
+			used[slot] = false;
+		}
+	}
+}
@@ -0,0 +1,215 @@
+/**
+ *
+ * Interval tree
+ *
+ * An implementation of an interval tree of distinct closed intervals [lo, hi]
+ * with info. The intervals are kept in a LongAVLTree ordered by (lo, hi),
+ * and every node keeps the max hi of its subtree as an aggregate, which is
+ * maintained through the tree's rotations and rebalancing.
+ *
+ */
+
+public class IntervalTree {
+	// max hi of a subtree, the hi of an interval is the low int of its key
+	private static final LongAVLTree.Monoid MAX_HI = new LongAVLTree.Monoid() {
+		public long identity() {
+			return Long.MIN_VALUE;
+		}
+
+		public long combine(long a, long b) {
+			return Math.max(a, b);
+		}
+
+		public long lift(long key, String info) {
+			return CompositeKeyAVLTree.low(key);
+		}
+	};
+
+	private LongAVLTree tree;
+
+	/**
+	 * public IntervalTree()
+	 * constructor.
+	 * Complexity: O(1)
+	 */
+	public IntervalTree() {
+		this.tree = new LongAVLTree(MAX_HI);
+	}
+
+	/**
+	 * public boolean empty()
+	 * returns true if and only if the tree is empty
+	 * Complexity: O(1)
+	 */
+	public boolean empty() {
+		return this.tree.empty();
+	}
+
+	/**
+	 * public int size()
+	 * Returns the number of intervals in the tree.
+	 * Complexity: O(1)
+	 */
+	public int size() {
+		return this.tree.size();
+	}
+
+	/**
+	 * public int insert(int lo, int hi, String i)
+	 * inserts the interval [lo, hi] with info i.
+	 * returns the number of rebalancing operations,
+	 * or -1 if lo > hi or the interval already exists in the tree.
+	 * Complexity: O(logn)
+	 */
+	public int insert(int lo, int hi, String i) {
+		if (lo > hi) return -1;
+		return this.tree.insert(CompositeKeyAVLTree.pack(lo, hi), i);
+	}
+
+	/**
+	 * public int delete(int lo, int hi)
+	 * deletes the interval [lo, hi] if it is there.
+	 * returns the number of rebalancing operations,
+	 * or -1 if the interval was not found in the tree.
+	 * Complexity: O(logn)
+	 */
+	public int delete(int lo, int hi) {
+		return this.tree.delete(CompositeKeyAVLTree.pack(lo, hi));
+	}
+
+	/**
+	 * public String search(int lo, int hi)
+	 * returns the info of the interval [lo, hi] if it exists in the tree
+	 * otherwise, returns null
+	 * Complexity: O(logn)
+	 */
+	public String search(int lo, int hi) {
+		return this.tree.search(CompositeKeyAVLTree.pack(lo, hi));
+	}
+
+	/**
+	 * public Cursor stab(int t)
+	 * returns a cursor over all the intervals that contain t,
+	 * ordered by (lo, hi)
+	 * Complexity: O(logn) to create, see Cursor for iteration
+	 */
+	public Cursor stab(int t) {
+		return overlapping(t, t);
+	}
+
+	/**
+	 * public Cursor overlapping(int lo, int hi)
+	 * returns a cursor over all the intervals that overlap [lo, hi],
+	 * ordered by (lo, hi). the cursor reads the tree lazily, so the tree
+	 * must not be changed while it is used.
+	 * Complexity: O(logn) to create, see Cursor for iteration
+	 */
+	public Cursor overlapping(int lo, int hi) {
+		return new Cursor(lo, hi);
+	}
+
+	/**
+	 * public int countOverlapping(int lo, int hi)
+	 * returns the number of intervals that overlap [lo, hi]
+	 * Complexity: O(logn + k*logn) for k overlapping intervals
+	 */
+	public int countOverlapping(int lo, int hi) {
+		int count = 0;
+		Cursor cursor = overlapping(lo, hi);
+		while (cursor.next()) count++;
+		return count;
+	}
+
+	/**
+	 * public class Cursor
+	 * a streaming iterator over the intervals that overlap a query [lo, hi].
+	 * an inorder walk that skips every subtree whose max hi is below the query,
+	 * and stops at the first interval that starts after the query.
+	 * next() does not allocate.
+	 * Complexity: O(logn + k*logn) for k results in the worst case,
+	 * close to O(logn + k) when the intervals are short compared to their gaps
+	 */
+	public class Cursor {
+		private final int queryLo;
+		private final int queryHi;
+		// the inorder stack, the height of an AVL tree with int size is below 64
+		private final LongAVLTree.LongAVLNode[] stack = new LongAVLTree.LongAVLNode[64];
+		private int top;
+		private LongAVLTree.LongAVLNode current;
+
+		/**
+		 * private Cursor(int queryLo, int queryHi)
+		 * constructor, positions the cursor before the first result
+		 * Complexity: O(logn)
+		 */
+		private Cursor(int queryLo, int queryHi) {
+			this.queryLo = queryLo;
+			this.queryHi = queryHi;
+			this.top = 0;
+			if (queryLo <= queryHi) pushLeft(tree.getRoot());
+		}
+
+		/**
+		 * private void pushLeft(LongAVLTree.LongAVLNode node)
+		 * pushes the left path of node, skipping subtrees whose max hi is below the query
+		 * Complexity: O(logn)
+		 */
+		private void pushLeft(LongAVLTree.LongAVLNode node) {
+			while (node != null && node.getAggregate() >= this.queryLo) {
+				this.stack[this.top++] = node;
+				node = node.getLeft();
+			}
+		}
+
+		/**
+		 * public boolean next()
+		 * moves to the next overlapping interval.
+		 * returns false if there are no more results.
+		 */
+		public boolean next() {
+			while (this.top > 0) {
+				LongAVLTree.LongAVLNode node = this.stack[--this.top];
+				long key = node.getKey();
+				if (CompositeKeyAVLTree.high(key) > this.queryHi) {
+					// all the following intervals start after the query
+					this.top = 0;
+					break;
+				}
+				pushLeft(node.getRight());
+				if (CompositeKeyAVLTree.low(key) >= this.queryLo) {
+					this.current = node;
+					return true;
+				}
+			}
+			this.current = null;
+			return false;
+		}
+
+		/**
+		 * public int lo()
+		 * returns the start of the current interval
+		 * Complexity: O(1)
+		 */
+		public int lo() {
+			return CompositeKeyAVLTree.high(this.current.getKey());
+		}
+
+		/**
+		 * public int hi()
+		 * returns the end of the current interval
+		 * Complexity: O(1)
+		 */
+		public int hi() {
+			return CompositeKeyAVLTree.low(this.current.getKey());
+		}
+
+		/**
+		 * public String info()
+		 * returns the info of the current interval
+		 * Complexity: O(1)
+		 */
+		public String info() {
+			return this.current.getValue();
+		}
+	}
+}
@@ -0,0 +1,147 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ *
+ * Latency histogram
+ *
+ * A concurrent histogram of non negative long values (e.g. nanoseconds)
+ * with log-linear buckets in the style of HdrHistogram: every power of two
+ * is split into 32 linear sub buckets, so any recorded value is reported
+ * with a relative error below 1/32 (about 3%).
+ * record is O(1). The summaries (count, percentiles, max, mean), add and
+ * reset scan all the B = 59 * 32 = 1888 buckets, so they are O(B): cheap
+ * next to a scrape, but not something to call per operation.
+ *
+ */
+
+public class LatencyHistogram {
+	private static final int SUB_BUCKET_BITS = 5;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	// values below SUB_BUCKETS are exact, then 32 buckets per power of two up to 2^63
+	private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	private AtomicLongArray counts;
+
+	/**
+	 * public LatencyHistogram()
+	 * constructor.
+	 * Complexity: O(B)
+	 */
+	public LatencyHistogram() {
+		this.counts = new AtomicLongArray(BUCKETS);
+	}
+
+	/**
+	 * public void record(long value)
+	 * records one value, negative values are recorded as 0.
+	 * safe to call from many threads.
+	 * Complexity: O(1)
+	 */
+	public void record(long value) {
+		this.counts.incrementAndGet(bucketIndex(Math.max(value, 0)));
+	}
+
+	/**
+	 * public void add(LatencyHistogram other)
+	 * adds all the values recorded in other to this histogram
+	 * Complexity: O(B)
+	 */
+	public void add(LatencyHistogram other) {
+		for (int i = 0; i < BUCKETS; i++) {
+			long c = other.counts.get(i);
+			if (c != 0) this.counts.addAndGet(i, c);
+		}
+	}
+
+	/**
+	 * public long getCount()
+	 * returns the number of recorded values
+	 * Complexity: O(B)
+	 */
+	public long getCount() {
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) total += this.counts.get(i);
+		return total;
+	}
+
+	/**
+	 * public long getValueAtPercentile(double percentile)
+	 * returns the value below or at which percentile percent (0..100) of the
+	 * recorded values are, up to the bucket precision. returns 0 if empty.
+	 * Complexity: O(B), two scans of the buckets
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long total = getCount();
+		if (total == 0) return 0;
+		long rank = (long) Math.ceil(Math.min(100.0, Math.max(0.0, percentile)) / 100.0 * total);
+		rank = Math.max(1, rank);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += this.counts.get(i);
+			if (seen >= rank) return bucketValue(i);
+		}
+		return bucketValue(BUCKETS - 1);
+	}
+
+	/**
+	 * public long getMax()
+	 * returns the largest recorded value up to the bucket precision, or 0 if empty
+	 * Complexity: O(B)
+	 */
+	public long getMax() {
+		for (int i = BUCKETS - 1; i >= 0; i--) {
+			if (this.counts.get(i) != 0) return bucketValue(i);
+		}
+		return 0;
+	}
+
+	/**
+	 * public double getMean()
+	 * returns the mean of the recorded values up to the bucket precision, or 0 if empty
+	 * Complexity: O(B)
+	 */
+	public double getMean() {
+		long total = 0;
+		double sum = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			long c = this.counts.get(i);
+			total += c;
+			sum += (double) c * bucketValue(i);
+		}
+		return total == 0 ? 0 : sum / total;
+	}
+
+	/**
+	 * public void reset()
+	 * removes all recorded values
+	 * Complexity: O(B)
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) this.counts.set(i, 0);
+	}
+
+	/**
+	 * private static int bucketIndex(long value)
+	 * returns the bucket of a non negative value
+	 * Complexity: O(1)
+	 */
+	private static int bucketIndex(long value) {
+		if (value < SUB_BUCKETS) return (int) value;
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	/**
+	 * private static long bucketValue(int index)
+	 * returns the largest value of a bucket
+	 * Complexity: O(1)
+	 */
+	private static long bucketValue(int index) {
+		if (index < SUB_BUCKETS) return index;
+		int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		int subBucket = index % SUB_BUCKETS;
+		long width = 1L << (exponent - SUB_BUCKET_BITS);
+		return ((long) (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS)) + width - 1;
+	}
+}
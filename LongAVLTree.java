@@ -0,0 +1,772 @@
+/**
+ *
+ * LongAVLTree
+ *
+ * An implementation of a AVL Tree with
+ * distinct long keys and info.
+ * Same structure as AVLTree, specialized for 64 bit keys
+ * so keys are never boxed on the search/insert paths.
+ *
+ */
+
+public class LongAVLTree {
+	private LongAVLNode root;
+	private LongAVLNode min;
+	private LongAVLNode max;
+	private Monoid monoid;
+
+	/**
+	 *  Complexity: O(1)
+	 */
+	public LongAVLTree() {
+		this.root = null;
+		this.min = null;
+		this.max = null;
+	}
+
+	/**
+	 * public LongAVLTree(Monoid monoid)
+	 * creates an empty tree in which every node also keeps the
+	 * aggregate of its subtree under the given monoid, see AVLTree.Monoid
+	 * Complexity: O(1)
+	 */
+	public LongAVLTree(Monoid monoid) {
+		this();
+		this.monoid = monoid;
+	}
+
+	/**
+	 * public boolean empty()
+	 * returns true if and only if the tree is empty
+	 * Complexity: O(1)
+	 */
+	public boolean empty() {
+		return (this.root == null);
+	}
+
+	/**
+	 * public String search(long k)
+	 * returns the info of an item with key k if it exists in the tree
+	 * otherwise, returns null
+	 * Complexity: O(logn)
+	 */
+	public String search(long k)
+	{
+		LongAVLNode n = findNode(k);
+		return n == null ? null : n.getValue();
+	}
+
+	/**
+	 * public String min()
+	 * Returns the info of the item with the smallest key in the tree,
+	 * or null if the tree is empty
+	 * Complexity: O(1)
+	 */
+	public String min()
+	{
+		if(this.empty()) return null;
+		return this.min.getValue();
+	}
+
+	/**
+	 * public String max()
+	 * Returns the info of the item with the largest key in the tree,
+	 * or null if the tree is empty
+	 * Complexity: O(1)
+	 */
+	public String max()
+	{
+		if(this.empty()) return null;
+		return this.max.getValue();
+	}
+
+	/**
+	 * public long[] keysToArray()
+	 * Returns a sorted array which contains all keys in the tree,
+	 * or an empty array if the tree is empty.
+	 * Complexity: O(n)
+	 */
+	public long[] keysToArray()
+	{
+		long[] keysArr = new long[this.size()];
+		recToArray(this.root, keysArr, null, 0);
+		return keysArr;
+	}
+
+	/**
+	 * public String[] infoToArray()
+	 * Returns an array which contains all info in the tree,
+	 * sorted by their respective keys,
+	 * or an empty array if the tree is empty.
+	 * Complexity: O(n)
+	 */
+	public String[] infoToArray()
+	{
+		String[] infoArr = new String[this.size()];
+		recToArray(this.root, null, infoArr, 0);
+		return infoArr;
+	}
+
+	/**
+	 * private int recToArray(LongAVLNode node, long[] keysArr, String[] infoArr, int index)
+	 *  node - the node to start the inorder travel
+	 *  keysArr / infoArr - the array to fill, the other one is null
+	 *  index - the index from which to start inserting items to the array
+	 *  returns the first index that is free in the array.
+	 *  Complexity: O(n)
+	 */
+	private int recToArray(LongAVLNode node, long[] keysArr, String[] infoArr, int index) {
+		if (node == null) {
+			return index;
+		}
+		index = recToArray(node.getLeft(), keysArr, infoArr, index);
+		if (keysArr != null) {
+			keysArr[index++] = node.getKey();
+		} else {
+			infoArr[index++] = node.getValue();
+		}
+		return recToArray(node.getRight(), keysArr, infoArr, index);
+	}
+
+	/**
+	 * public int size()
+	 * Returns the number of nodes in the tree.
+	 * Complexity: O(1)
+	 */
+	public int size()
+	{
+		return getSizeNull(this.root);
+	}
+
+	/**
+	 * public LongAVLNode getRoot()
+	 * Returns the root AVL node, or null if the tree is empty
+	 * Complexity: O(1)
+	 */
+	public LongAVLNode getRoot()
+	{
+		return this.root;
+	}
+
+	/**
+	 * public int insert(long k, String i)
+	 * inserts an item with key k and info i to the AVL tree.
+	 * returns the number of rebalancing operations, or 0 if no rebalancing operations were necessary.
+	 * returns -1 if an item with key k already exists in the tree.
+	 * Complexity: O(logn)
+	 */
+	public int insert(long k, String i) {
+		LongAVLNode y = null;
+		LongAVLNode x = this.root;
+		while (x != null) {
+			y = x;
+			if (k == x.getKey()) {
+				return -1;
+			}
+			else if (k < x.getKey()) x = x.getLeft();
+			else x = x.getRight();
+		}
+		LongAVLNode newNode = new LongAVLNode(k, i);
+		if (this.monoid != null) updateAggregate(newNode);
+		newNode.setParent(y);
+		if (y == null) {
+			this.root = newNode;
+			this.min = newNode;
+			this.max = newNode;
+		} else {
+			if (k < y.getKey()) y.setLeft(newNode);
+			else y.setRight(newNode);
+			if (k < this.min.getKey()) this.min = newNode;
+			if (k > this.max.getKey()) this.max = newNode;
+		}
+		updateSizeOnPathToRoot(y, 1);
+		return fixInsert(y);
+	}
+
+	/**
+	 * private int fixInsert(LongAVLNode parent)
+	 * go up from the parent of the inserted node
+	 * to the root and look for a criminal.
+	 * fix it if found.
+	 * returns the num of rotations needed to fix the criminal.
+	 * Complexity: O(logn)
+	 */
+	private int fixInsert(LongAVLNode parent) {
+		while (parent != null) {
+			int prevHeight = parent.getHeight();
+			int newHeight = updateHeight(parent);
+			int bf = BF(parent);
+			if (Math.abs(bf) == 2) {
+				return fixCriminal(parent, bf);
+			}
+			if (prevHeight == newHeight) {
+				break;
+			}
+			parent = parent.getParent();
+		}
+		return 0;
+	}
+
+	/**
+	 * public int delete(long k)
+	 * deletes an item with key k from the binary tree, if it is there.
+	 * returns the number of rebalancing operations, or 0 if no rebalancing operations were needed.
+	 * returns -1 if an item with key k was not found in the tree.
+	 * Complexity: O(logn)
+	 */
+	public int delete(long k) {
+		LongAVLNode nodeToDelete = findNode(k);
+		if (nodeToDelete == null) return -1;
+		if (nodeToDelete == this.min) this.min = findSuccessor(nodeToDelete);
+		if (nodeToDelete == this.max) this.max = findPredecessor(nodeToDelete);
+		return deleteNode(nodeToDelete);
+	}
+
+	/**
+	 * private int deleteNode(LongAVLNode nodeToDelete)
+	 * unlinks the node (replacing it by its successor if it has two sons),
+	 * updates size field of nodes after delete
+	 * and fixes the tree to be an avl tree with fixDelete.
+	 * Complexity: O(logn)
+	 */
+	private int deleteNode(LongAVLNode nodeToDelete) {
+		// startFix is the father of the node that was physically deleted
+		LongAVLNode startFix;
+		if (nodeToDelete.getLeft() != null && nodeToDelete.getRight() != null) {
+			LongAVLNode suc = findMin(nodeToDelete.getRight());
+			startFix = unlink(suc);
+			// the successor's father is the deleted node, the successor
+			// takes its place so the fix starts from the successor itself
+			if (startFix == nodeToDelete) startFix = suc;
+			replaceNode(nodeToDelete, suc);
+		} else {
+			startFix = unlink(nodeToDelete);
+		}
+		updateSizeOnPathToRoot(startFix, -1);
+		return fixDelete(startFix);
+	}
+
+	/**
+	 * private LongAVLNode unlink(LongAVLNode node)
+	 * removes a node that has at most one son, connecting the son
+	 * to the node's father. returns the removed node's father
+	 * Complexity: O(1)
+	 */
+	private LongAVLNode unlink(LongAVLNode node) {
+		LongAVLNode y = node.getParent();
+		LongAVLNode son = node.getLeft() != null ? node.getLeft() : node.getRight();
+		if (y == null) {
+			this.root = son;
+		} else if (y.getRight() == node) {
+			y.setRight(son);
+		} else {
+			y.setLeft(son);
+		}
+		if (son != null) son.setParent(y);
+		// disconnect removed node
+		node.setParent(null);
+		node.setLeft(null);
+		node.setRight(null);
+		return y;
+	}
+
+	/**
+	 * private void replaceNode(LongAVLNode oldNode, LongAVLNode newNode)
+	 * puts newNode in the place of oldNode in the tree
+	 *  Complexity: O(1)
+	 */
+	private void replaceNode(LongAVLNode oldNode, LongAVLNode newNode) {
+		newNode.setParent(oldNode.getParent());
+		newNode.setRight(oldNode.getRight());
+		newNode.setLeft(oldNode.getLeft());
+		newNode.setHeight(oldNode.getHeight());
+		newNode.setSize(oldNode.getSize());
+		if (oldNode.getLeft() != null) oldNode.getLeft().setParent(newNode);
+		if (oldNode.getRight() != null) oldNode.getRight().setParent(newNode);
+		if (this.root == oldNode) this.root = newNode;
+		else if (oldNode.getParent().getRight() == oldNode) oldNode.getParent().setRight(newNode);
+		else oldNode.getParent().setLeft(newNode);
+		// disconnect old node
+		oldNode.setParent(null);
+		oldNode.setRight(null);
+		oldNode.setLeft(null);
+	}
+
+	/**
+	 * private int fixDelete(LongAVLNode y)
+	 * Balances the tree to be a valid AVL Tree
+	 *  Complexity: O(logn)
+	 */
+	private int fixDelete(LongAVLNode y) {
+		int numOfRotations = 0;
+		while (y != null) {
+			LongAVLNode originalParent = y.getParent();
+			int prevHeight = y.getHeight();
+			int newHeight = updateHeight(y);
+			int bf = BF(y);
+			if (Math.abs(bf) == 2) {
+				numOfRotations += fixCriminal(y, bf);
+			} else if (prevHeight == newHeight) {
+				break;
+			}
+			y = originalParent;
+		}
+		return numOfRotations;
+	}
+
+	/**
+	 * private void rotateLeft(LongAVLNode x)
+	 * x is parent and y is its right son, after the rotation y is x's parent.
+	 * see AVLTree.rotateLeft
+	 * Complexity: O(1)
+	 */
+	private void rotateLeft(LongAVLNode x) {
+		LongAVLNode y = x.getRight();
+		x.setRight(y.getLeft());
+		if (y.getLeft() != null) y.getLeft().setParent(x);
+		y.setParent(x.getParent());
+		if (x.getParent() == null) this.root = y;
+		else if (x == x.getParent().getLeft()) x.getParent().setLeft(y);
+		else x.getParent().setRight(y);
+		y.setLeft(x);
+		x.setParent(y);
+
+		y.setSize(x.getSize());
+		x.setSize(getSizeNull(x.getLeft()) + getSizeNull(x.getRight()) + 1);
+		updateHeight(x);
+		updateHeight(y);
+		if (this.monoid != null) {
+			updateAggregate(x);
+			updateAggregate(y);
+		}
+	}
+
+	/**
+	 * private void rotateRight(LongAVLNode x)
+	 * x is parent and y is its left son, after the rotation y is x's parent.
+	 * see AVLTree.rotateRight
+	 * Complexity: O(1)
+	 */
+	private void rotateRight(LongAVLNode x) {
+		LongAVLNode y = x.getLeft();
+		x.setLeft(y.getRight());
+		if (y.getRight() != null) y.getRight().setParent(x);
+		y.setParent(x.getParent());
+		if (x.getParent() == null) this.root = y;
+		else if (x == x.getParent().getRight()) x.getParent().setRight(y);
+		else x.getParent().setLeft(y);
+		y.setRight(x);
+		x.setParent(y);
+
+		y.setSize(x.getSize());
+		x.setSize(getSizeNull(x.getLeft()) + getSizeNull(x.getRight()) + 1);
+		updateHeight(x);
+		updateHeight(y);
+		if (this.monoid != null) {
+			updateAggregate(x);
+			updateAggregate(y);
+		}
+	}
+
+	/**
+	 * private int fixCriminal(LongAVLNode criminal, int criminalBf)
+	 * decides which rotation is needed in order to fix the criminal
+	 * returns the number of rotations
+	 * Complexity: O(1)
+	 */
+	private int fixCriminal(LongAVLNode criminal, int criminalBf) {
+		if (criminalBf == 2) {
+			if (BF(criminal.getLeft()) == -1) {
+				// left right rotation
+				rotateLeft(criminal.getLeft());
+				rotateRight(criminal);
+				return 2;
+			}
+			rotateRight(criminal);
+			return 1;
+		}
+		if (BF(criminal.getRight()) == 1) {
+			// right left rotation
+			rotateRight(criminal.getRight());
+			rotateLeft(criminal);
+			return 2;
+		}
+		rotateLeft(criminal);
+		return 1;
+	}
+
+	/**
+	 * private LongAVLNode findMin(LongAVLNode n)
+	 * returns the min of a subtree with root n
+	 * Complexity: O(logn)
+	 */
+	private LongAVLNode findMin(LongAVLNode n) {
+		while (n.getLeft() != null) n = n.getLeft();
+		return n;
+	}
+
+	/**
+	 * private LongAVLNode findMax(LongAVLNode n)
+	 * returns the max of a subtree with root n
+	 * Complexity: O(logn)
+	 */
+	private LongAVLNode findMax(LongAVLNode n) {
+		while (n.getRight() != null) n = n.getRight();
+		return n;
+	}
+
+	/**
+	 * public LongAVLNode findSuccessor(LongAVLNode n)
+	 * returns the successor of a given node
+	 * Complexity: O(logn)
+	 */
+	public LongAVLNode findSuccessor(LongAVLNode n) {
+		if (n.getRight() != null) return findMin(n.getRight());
+		LongAVLNode x = n;
+		LongAVLNode y = x.getParent();
+		while (y != null && x == y.getRight()) {
+			x = y;
+			y = x.getParent();
+		}
+		return y;
+	}
+
+	/**
+	 * public LongAVLNode findPredecessor(LongAVLNode n)
+	 * returns the predecessor of a given node
+	 * Complexity: O(logn)
+	 */
+	public LongAVLNode findPredecessor(LongAVLNode n) {
+		if (n.getLeft() != null) return findMax(n.getLeft());
+		LongAVLNode x = n;
+		LongAVLNode y = x.getParent();
+		while (y != null && x == y.getLeft()) {
+			x = y;
+			y = x.getParent();
+		}
+		return y;
+	}
+
+	/**
+	 * public LongAVLNode findNode(long k)
+	 * returns the node with key k if it exists in the tree
+	 * otherwise, returns null
+	 * Complexity: O(logn)
+	 */
+	public LongAVLNode findNode(long k) {
+		LongAVLNode x = this.root;
+		while (x != null) {
+			if (k == x.getKey()) return x;
+			else if (k < x.getKey()) x = x.getLeft();
+			else x = x.getRight();
+		}
+		return null;
+	}
+
+	/**
+	 * public LongAVLNode treeSelect(int rank)
+	 * returns the node with the given rank (1 is the smallest key),
+	 * or null if rank is not in 1..size()
+	 * Complexity: O(logn)
+	 */
+	public LongAVLNode treeSelect(int rank) {
+		if (rank < 1 || rank > this.size()) return null;
+		LongAVLNode x = this.root;
+		while (true) {
+			int counter = getSizeNull(x.getLeft()) + 1;
+			if (rank == counter) return x;
+			if (rank < counter) {
+				x = x.getLeft();
+			} else {
+				rank -= counter;
+				x = x.getRight();
+			}
+		}
+	}
+
+	/**
+	 * public int rank(long k)
+	 * returns the number of keys in the tree that are smaller than or equal to k.
+	 * if k is in the tree, treeSelect(rank(k)) is its node.
+	 * Complexity: O(logn)
+	 */
+	public int rank(long k) {
+		int rank = 0;
+		LongAVLNode x = this.root;
+		while (x != null) {
+			if (k < x.getKey()) {
+				x = x.getLeft();
+			} else {
+				rank += getSizeNull(x.getLeft()) + 1;
+				if (k == x.getKey()) break;
+				x = x.getRight();
+			}
+		}
+		return rank;
+	}
+
+	/**
+	 * private int getSizeNull(LongAVLNode n)
+	 * returns a node's size or 0 if null
+	 * Complexity: O(1)
+	 */
+	private int getSizeNull(LongAVLNode n) {
+		if (n == null) return 0;
+		return n.getSize();
+	}
+
+	/**
+	 * private int updateHeight(LongAVLNode n)
+	 * updates a node's height and returns it
+	 * Complexity: O(1)
+	 */
+	private int updateHeight(LongAVLNode n) {
+		int newHeight = 1 + Math.max(getHeightWithNull(n.getLeft()), getHeightWithNull(n.getRight()));
+		n.setHeight(newHeight);
+		return newHeight;
+	}
+
+	/**
+	 * private int getHeightWithNull(LongAVLNode n)
+	 * if a node is null, returns -1 as height
+	 * else returns height
+	 * Complexity: O(1)
+	 */
+	private int getHeightWithNull(LongAVLNode n) {
+		if (n == null) return -1;
+		return n.getHeight();
+	}
+
+	/**
+	 * private int BF(LongAVLNode n)
+	 * returns the balance factor of a given node
+	 * Complexity: O(1)
+	 */
+	private int BF(LongAVLNode n) {
+		return getHeightWithNull(n.getLeft()) - getHeightWithNull(n.getRight());
+	}
+
+	/**
+	 * private void updateSizeOnPathToRoot(LongAVLNode n, int toAdd)
+	 * adds toAdd to the size of all nodes in the path from n to the root,
+	 * and recomputes their aggregates when the tree has a monoid
+	 *  Complexity: O(logn)
+	 */
+	private void updateSizeOnPathToRoot(LongAVLNode n, int toAdd) {
+		while (n != null) {
+			n.setSize(n.getSize() + toAdd);
+			if (this.monoid != null) updateAggregate(n);
+			n = n.getParent();
+		}
+	}
+
+	/**
+	 * public long aggregate()
+	 * returns the aggregate of all the items in the tree,
+	 * or the monoid's identity if the tree is empty
+	 * @pre the tree was created with a monoid
+	 * Complexity: O(1)
+	 */
+	public long aggregate() {
+		return getAggregateNull(this.root);
+	}
+
+	/**
+	 * public long getAggregateNull(LongAVLNode n)
+	 * returns a node's subtree aggregate or the identity if null
+	 * @pre the tree was created with a monoid
+	 * Complexity: O(1)
+	 */
+	public long getAggregateNull(LongAVLNode n) {
+		if (n == null) return this.monoid.identity();
+		return n.getAggregate();
+	}
+
+	/**
+	 * private void updateAggregate(LongAVLNode n)
+	 * recomputes a node's aggregate from its sons' aggregates
+	 * Complexity: O(1)
+	 */
+	private void updateAggregate(LongAVLNode n) {
+		long agg = this.monoid.combine(getAggregateNull(n.getLeft()), this.monoid.lift(n.getKey(), n.getValue()));
+		n.setAggregate(this.monoid.combine(agg, getAggregateNull(n.getRight())));
+	}
+
+	/**
+	 * public interface Monoid
+	 * an associative aggregate over items, the long keyed version of AVLTree.Monoid
+	 */
+	public interface Monoid {
+		public long identity(); // neutral element of combine
+		public long combine(long a, long b); // associative combine, a is before b
+		public long lift(long key, String info); // the value of a single item
+	}
+
+	/**
+	 * public class LongAVLNode
+	 * a node of the LongAVLTree, with the same fields as AVLTree.AVLNode
+	 */
+	public class LongAVLNode {
+		private long key;
+		private String value;
+		private LongAVLNode parent;
+		private LongAVLNode leftSon;
+		private LongAVLNode rightSon;
+		private int height;
+		private int size;
+		private long aggregate;
+
+		/**
+		 * public LongAVLNode(long key, String value)
+		 * constructor, gets key and val and creates new node
+		 * Complexity: O(1)
+		 */
+		public LongAVLNode(long key, String value) {
+			this.key = key;
+			this.value = value;
+			this.height = 0;
+			this.size = 1;
+		}
+
+		/**
+		 * public long getKey()
+		 * returns the node's key
+		 * Complexity: O(1)
+		 */
+		public long getKey()
+		{
+			return this.key;
+		}
+
+		/**
+		 * public String getValue()
+		 * returns the node's value
+		 * Complexity: O(1)
+		 */
+		public String getValue()
+		{
+			return this.value;
+		}
+
+		/**
+		 * public void setLeft(LongAVLNode node)
+		 * updates the node's left son to be the given node
+		 * Complexity: O(1)
+		 */
+		public void setLeft(LongAVLNode node)
+		{
+			this.leftSon = node;
+		}
+
+		/**
+		 * public LongAVLNode getLeft()
+		 * returns the node's left son or null if there is no son
+		 * Complexity: O(1)
+		 */
+		public LongAVLNode getLeft()
+		{
+			return this.leftSon;
+		}
+
+		/**
+		 * public void setRight(LongAVLNode node)
+		 * updates the node's right son to be the given node
+		 * Complexity: O(1)
+		 */
+		public void setRight(LongAVLNode node)
+		{
+			this.rightSon = node;
+		}
+
+		/**
+		 * public LongAVLNode getRight()
+		 * returns the node's right son or null if there is no son
+		 * Complexity: O(1)
+		 */
+		public LongAVLNode getRight()
+		{
+			return this.rightSon;
+		}
+
+		/**
+		 * public void setParent(LongAVLNode node)
+		 * updates the node's parent to be the given node
+		 * Complexity: O(1)
+		 */
+		public void setParent(LongAVLNode node)
+		{
+			this.parent = node;
+		}
+
+		/**
+		 * public LongAVLNode getParent()
+		 * returns the node's parent
+		 * Complexity: O(1)
+		 */
+		public LongAVLNode getParent()
+		{
+			return this.parent;
+		}
+
+		/**
+		 * public void setHeight(int height)
+		 * updates the node's height to be the given height
+		 * Complexity: O(1)
+		 */
+		public void setHeight(int height)
+		{
+			this.height = height;
+		}
+
+		/**
+		 * public int getHeight()
+		 * returns the node's height
+		 * Complexity: O(1)
+		 */
+		public int getHeight()
+		{
+			return this.height;
+		}
+
+		/**
+		 * public void setSize(int size)
+		 * updates the node's size to be the given size
+		 * Complexity: O(1)
+		 */
+		public void setSize(int size)
+		{
+			this.size = size;
+		}
+
+		/**
+		 * public int getSize()
+		 * returns the node's size
+		 * Complexity: O(1)
+		 */
+		public int getSize()
+		{
+			return this.size;
+		}
+
+		/**
+		 * public void setAggregate(long aggregate)
+		 * updates the aggregate of the node's subtree
+		 * Complexity: O(1)
+		 */
+		public void setAggregate(long aggregate)
+		{
+			this.aggregate = aggregate;
+		}
+
+		/**
+		 * public long getAggregate()
+		 * returns the aggregate of the node's subtree,
+		 * only maintained when the tree has a monoid
+		 * Complexity: O(1)
+		 */
+		public long getAggregate()
+		{
+			return this.aggregate;
+		}
+	}
+}
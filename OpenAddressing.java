@@ -0,0 +1,51 @@
+/**
+ *
+ * Open addressing
+ *
+ * The removal shared by the open addressing tables with linear probing
+ * (IntClockCache and the other int keyed tables). Removing an entry leaves
+ * a hole, and the following entries of its probe run that would not be
+ * found past the hole are shifted back into it (backward shift deletion),
+ * so the tables need no tombstones. A table gives access to its slots
+ * through the Table interface.
+ *
+ */
+
+public class OpenAddressing {
+
+	/**
+	 * public interface Table
+	 * the slots of an open addressing table, from 0 to mask
+	 */
+	public interface Table {
+		public boolean occupied(int slot); // returns true if the slot holds an entry
+		public int home(int slot); // returns the home slot of the slot's entry
+		public void move(int from, int to); // moves the entry of slot from to the empty slot to
+		public void clear(int slot); // empties the slot
+	}
+
+	private OpenAddressing() {
+	}
+
+	/**
+	 * public static void removeSlot(Table table, int mask, int slot)
+	 * empties an occupied slot and shifts back the following entries of its
+	 * probe run that would not be found past the hole
+	 * Complexity: O(1) expected, the length of the probe run
+	 */
+	public static void removeSlot(Table table, int mask, int slot) {
+		int hole = slot;
+		int next = (hole + 1) & mask;
+		while (table.occupied(next)) {
+			int home = table.home(next);
+			// the entry can move to the hole if its home is not in (hole, next]
+			boolean movable = (hole <= next) ? (home <= hole || home > next) : (home <= hole && home > next);
+			if (movable) {
+				table.move(next, hole);
+				hole = next;
+			}
+			next = (next + 1) & mask;
+		}
+		table.clear(hole);
+	}
+}
@@ -0,0 +1,149 @@
+import java.nio.IntBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ *
+ * Parallel tree export
+ *
+ * Exports the keys and infos of an AVLTree, sorted by key, with fork-join
+ * tasks. The output position of every subtree is known from the size
+ * fields (a node's items start after its left subtree's), so the subtrees
+ * fill disjoint slices of the output in parallel, without merging.
+ * Keys can also be written straight into an IntBuffer, e.g. a view of a
+ * direct ByteBuffer, to hand them off without another copy.
+ * The tree must not be changed during an export.
+ *
+ */
+
+public class ParallelTreeExport {
+	// subtrees up to this size are exported by one task
+	private static final int THRESHOLD = 1 << 13;
+
+	/**
+	 * public static int export(AVLTree tree, int[] keys, String[] infos)
+	 * fills keys and infos (either may be null) with the tree's items on the
+	 * common fork-join pool. returns the number of items.
+	 * @pre the arrays that are not null have room for size() items
+	 * Complexity: O(n) work, O(n / parallelism + logn) time
+	 */
+	public static int export(AVLTree tree, int[] keys, String[] infos) {
+		return export(tree, keys, infos, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * public static int export(AVLTree tree, int[] keys, String[] infos, ForkJoinPool pool)
+	 * like export, on the given pool
+	 * Complexity: O(n) work, O(n / parallelism + logn) time
+	 */
+	public static int export(AVLTree tree, int[] keys, String[] infos, ForkJoinPool pool) {
+		if (tree.empty()) return 0;
+		pool.invoke(new ExportTask(tree.getRoot(), 0, keys, null, infos));
+		return tree.size();
+	}
+
+	/**
+	 * public static int exportKeys(AVLTree tree, IntBuffer out)
+	 * writes the tree's keys into out from its position on, and moves the
+	 * position past them. returns the number of keys, or -1 if they do not
+	 * fit in out's remaining space (nothing is written).
+	 * Complexity: O(n) work, O(n / parallelism + logn) time
+	 */
+	public static int exportKeys(AVLTree tree, IntBuffer out) {
+		int n = tree.size();
+		if (n > out.remaining()) return -1;
+		if (n == 0) return 0;
+		ForkJoinPool.commonPool().invoke(new ExportTask(tree.getRoot(), out.position(), null, out, null));
+		out.position(out.position() + n);
+		return n;
+	}
+
+	/**
+	 * private static class ExportTask
+	 * exports a subtree from a given output index: a big subtree forks its
+	 * left subtree and exports its node and right subtree itself
+	 */
+	private static class ExportTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final AVLTree.IAVLNode node;
+		private final int offset;
+		private final int[] keys;
+		private final IntBuffer keyBuffer;
+		private final String[] infos;
+		// forked tasks, chained so they can all be joined
+		private ExportTask next;
+
+		private ExportTask(AVLTree.IAVLNode node, int offset, int[] keys, IntBuffer keyBuffer, String[] infos) {
+			this.node = node;
+			this.offset = offset;
+			this.keys = keys;
+			this.keyBuffer = keyBuffer;
+			this.infos = infos;
+		}
+
+		protected void compute() {
+			AVLTree.IAVLNode n = this.node;
+			int at = this.offset;
+			ExportTask left = null;
+			// walk down the right spine, forking the big left subtrees on the way
+			while (n != null && size(n) > THRESHOLD) {
+				if (n.getLeft() != null) {
+					left = fork(n.getLeft(), at, left);
+				}
+				at = writeNode(n, at + size(n.getLeft()));
+				n = n.getRight();
+			}
+			writeSubtree(n, at);
+			while (left != null) {
+				left.join();
+				left = left.next;
+			}
+		}
+
+		/**
+		 * private ExportTask fork(AVLTree.IAVLNode subtree, int at, ExportTask chain)
+		 * forks the export of a subtree and adds it in front of the chain
+		 */
+		private ExportTask fork(AVLTree.IAVLNode subtree, int at, ExportTask chain) {
+			ExportTask task = new ExportTask(subtree, at, this.keys, this.keyBuffer, this.infos);
+			task.next = chain;
+			task.fork();
+			return task;
+		}
+
+		/**
+		 * private int writeSubtree(AVLTree.IAVLNode n, int at)
+		 * writes a subtree inorder from index at, returns the next free index
+		 */
+		private int writeSubtree(AVLTree.IAVLNode n, int at) {
+			if (n == null) return at;
+			at = writeSubtree(n.getLeft(), at);
+			at = writeNode(n, at);
+			return writeSubtree(n.getRight(), at);
+		}
+
+		/**
+		 * private int writeNode(AVLTree.IAVLNode n, int at)
+		 * writes a node's occurrences from index at, returns the next free index
+		 */
+		private int writeNode(AVLTree.IAVLNode n, int at) {
+			int count = ((AVLTree.AVLNode) n).getCount();
+			String info = (this.infos == null) ? null : n.getValue();
+			for (int c = 0; c < count; c++, at++) {
+				if (this.keys != null) this.keys[at] = n.getKey();
+				if (this.keyBuffer != null) this.keyBuffer.put(at, n.getKey());
+				if (this.infos != null) this.infos[at] = info;
+			}
+			return at;
+		}
+
+		/**
+		 * private static int size(AVLTree.IAVLNode n)
+		 * returns a subtree's number of items, 0 for null
+		 */
+		private static int size(AVLTree.IAVLNode n) {
+			return (n == null) ? 0 : ((AVLTree.AVLNode) n).getSize();
+		}
+	}
+}
@@ -0,0 +1,296 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.Inflater;
+
+/**
+ *
+ * Replication follower
+ *
+ * A read replica of a ReplicationLeader's AVLTree. A background thread
+ * connects to the leader, sends the epoch and the last sequence number of
+ * its replica, and applies the batches of changes it receives in sequence
+ * order. A snapshot replaces the whole replica (built balanced in O(n)).
+ * When the connection breaks, the thread reconnects and resumes from the
+ * last applied change. Reads see the replica as of a whole batch.
+ *
+ */
+
+public class ReplicationFollower {
+	private static final long RETRY_MILLIS = 100;
+
+	private InetSocketAddress leader;
+	private AVLTree tree;
+	private ReentrantReadWriteLock lock;
+	private Condition applied;
+	private long epoch;
+	private long appliedSeq;
+	private volatile boolean closed;
+	private volatile Socket socket;
+	private Thread thread;
+	private volatile long snapshotCount;
+	private volatile long batchCount;
+
+	/**
+	 * public ReplicationFollower(InetSocketAddress leader)
+	 * constructor, the replica is empty until start is called.
+	 * Complexity: O(1)
+	 */
+	public ReplicationFollower(InetSocketAddress leader) {
+		this.leader = leader;
+		this.tree = new AVLTree();
+		this.lock = new ReentrantReadWriteLock();
+		this.applied = this.lock.writeLock().newCondition();
+		this.epoch = 0;
+		this.appliedSeq = 0;
+		this.closed = false;
+	}
+
+	/**
+	 * public void start()
+	 * starts following the leader in a background thread
+	 * Complexity: O(1)
+	 */
+	public synchronized void start() {
+		if (this.thread != null || this.closed) return;
+		this.thread = new Thread(this::followLoop, "replication-follower");
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	/**
+	 * public String search(int k)
+	 * returns the info of an item with key k if it exists in the replica
+	 * otherwise, returns null
+	 * Complexity: O(logn)
+	 */
+	public String search(int k) {
+		this.lock.readLock().lock();
+		try {
+			return this.tree.search(k);
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * public int size()
+	 * returns the number of items in the replica
+	 * Complexity: O(1)
+	 */
+	public int size() {
+		this.lock.readLock().lock();
+		try {
+			return this.tree.size();
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * public int[] keysToArray()
+	 * returns a sorted array of the replica's keys
+	 * Complexity: O(n)
+	 */
+	public int[] keysToArray() {
+		this.lock.readLock().lock();
+		try {
+			return this.tree.keysToArray();
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * public String[] infoToArray()
+	 * returns the replica's infos sorted by their keys
+	 * Complexity: O(n)
+	 */
+	public String[] infoToArray() {
+		this.lock.readLock().lock();
+		try {
+			return this.tree.infoToArray();
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * public long getAppliedSequence()
+	 * returns the sequence number of the last applied change
+	 * Complexity: O(1)
+	 */
+	public long getAppliedSequence() {
+		this.lock.readLock().lock();
+		try {
+			return this.appliedSeq;
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * public boolean awaitSequence(long seq, long timeout, TimeUnit unit)
+	 * waits until the change seq is applied. returns false on timeout or
+	 * if the thread is interrupted
+	 * Complexity: O(1), plus the wait
+	 */
+	public boolean awaitSequence(long seq, long timeout, TimeUnit unit) {
+		long nanos = unit.toNanos(timeout);
+		this.lock.writeLock().lock();
+		try {
+			while (this.appliedSeq < seq) {
+				if (nanos <= 0) return false;
+				nanos = this.applied.awaitNanos(nanos);
+			}
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * public long getSnapshotCount()
+	 * returns the number of snapshots applied
+	 * Complexity: O(1)
+	 */
+	public long getSnapshotCount() {
+		return this.snapshotCount;
+	}
+
+	/**
+	 * public long getBatchCount()
+	 * returns the number of batches applied
+	 * Complexity: O(1)
+	 */
+	public long getBatchCount() {
+		return this.batchCount;
+	}
+
+	/**
+	 * public void disconnect()
+	 * drops the current connection, the follower reconnects and resumes
+	 * Complexity: O(1)
+	 */
+	public void disconnect() {
+		ReplicationLeader.closeQuietly(this.socket);
+	}
+
+	/**
+	 * public void close()
+	 * stops following the leader, the replica stays readable
+	 * Complexity: O(1)
+	 */
+	public void close() {
+		this.closed = true;
+		ReplicationLeader.closeQuietly(this.socket);
+	}
+
+	/**
+	 * private void followLoop()
+	 * connects to the leader and applies its frames, reconnecting until closed
+	 */
+	private void followLoop() {
+		Inflater inflater = new Inflater();
+		try {
+			while (!this.closed) {
+				try (Socket s = new Socket()) {
+					this.socket = s;
+					if (this.closed) break;
+					s.connect(this.leader);
+					s.setTcpNoDelay(true);
+					DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+					DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream(), 1 << 16));
+					this.lock.readLock().lock();
+					try {
+						out.writeLong(this.epoch);
+						out.writeLong(this.appliedSeq);
+					} finally {
+						this.lock.readLock().unlock();
+					}
+					out.flush();
+					while (!this.closed) {
+						byte[] raw = ReplicationLeader.readFrame(in, inflater);
+						if (apply(new DataInputStream(new ByteArrayInputStream(raw))) == -1) break;
+					}
+				} catch (IOException e) {
+					// the leader is down or the connection broke, retry below
+				}
+				if (this.closed) break;
+				try {
+					Thread.sleep(RETRY_MILLIS);
+				} catch (InterruptedException e) {
+					break;
+				}
+			}
+		} finally {
+			inflater.end();
+		}
+	}
+
+	/**
+	 * private int apply(DataInputStream frame)
+	 * applies an uncompressed frame. returns -1 if the frame does not follow
+	 * the replica (the connection is then restarted), otherwise 0
+	 * Complexity: O(batch * logn), O(n) for a snapshot
+	 */
+	private int apply(DataInputStream frame) throws IOException {
+		int kind = frame.readUnsignedByte();
+		if (kind == ReplicationLeader.SNAPSHOT) {
+			long snapshotEpoch = frame.readLong();
+			long seq = frame.readLong();
+			int n = frame.readInt();
+			// every item takes at least 8 bytes: its key and its info's length
+			if (n < 0 || n > frame.available() / 8) throw new IOException("malformed snapshot");
+			int[] keys = new int[n];
+			String[] infos = new String[n];
+			for (int j = 0; j < n; j++) {
+				keys[j] = frame.readInt();
+				infos[j] = ReplicationLeader.readString(frame);
+			}
+			AVLTree replica = new AVLTree(keys, infos);
+			this.lock.writeLock().lock();
+			try {
+				this.tree = replica;
+				this.epoch = snapshotEpoch;
+				this.appliedSeq = seq;
+				this.snapshotCount++;
+				this.applied.signalAll();
+			} finally {
+				this.lock.writeLock().unlock();
+			}
+			return 0;
+		}
+		if (kind != ReplicationLeader.BATCH) return -1;
+		long first = frame.readLong();
+		int count = frame.readInt();
+		this.lock.writeLock().lock();
+		try {
+			if (first != this.appliedSeq + 1) return -1;
+			for (int j = 0; j < count; j++) {
+				int type = frame.readUnsignedByte();
+				int key = frame.readInt();
+				if (type == ChangeFeed.INSERT) this.tree.insert(key, ReplicationLeader.readString(frame));
+				else this.tree.delete(key);
+				// counted per change, so a malformed frame leaves appliedSeq at the last applied change
+				this.appliedSeq++;
+			}
+			this.batchCount++;
+			this.applied.signalAll();
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+		return 0;
+	}
+}
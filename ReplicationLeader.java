@@ -0,0 +1,531 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ *
+ * Replication leader
+ *
+ * Owns an AVLTree and streams its inserts and deletes to ReplicationFollowers
+ * over TCP. Every change is numbered by a sequence number starting at 1 and
+ * kept in a bounded ring log of the latest changes.
+ * A follower connects and sends the last sequence number it applied; a
+ * sender thread then ships it the following changes in batches, each batch
+ * compressed with Deflater. A follower that lags behind the ring (or asks
+ * for a sequence the leader does not know) gets a compressed snapshot of
+ * the whole tree first, then the changes after it.
+ * Every leader has a random epoch, and a follower's sequence numbers only
+ * count for the leader whose snapshot it applied.
+ * Frames on the wire: raw length int, compressed length int, compressed
+ * bytes. Uncompressed, a frame starts with its kind: a BATCH holds its first
+ * sequence number, the number of changes and per change its type
+ * (ChangeFeed.INSERT or DELETE), key and info; a SNAPSHOT holds the epoch,
+ * its sequence number, the number of items and the items sorted by key.
+ * A frame is at most MAX_FRAME bytes uncompressed, so a corrupt length
+ * cannot make a follower allocate more than that (this also bounds the
+ * size of a snapshot).
+ *
+ */
+
+public class ReplicationLeader {
+	static final int BATCH = 1;
+	static final int SNAPSHOT = 2;
+	// the largest uncompressed frame, 256 MiB
+	static final int MAX_FRAME = 1 << 28;
+	// the acceptor waits this long after a failed accept, e.g. when out of file descriptors
+	private static final long ACCEPT_RETRY_MILLIS = 50;
+	// a sender wakes up this often to notice a closed leader
+	private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+
+	private AVLTree tree;
+	private long epoch;
+	private ReentrantReadWriteLock lock;
+	// senders wait for changes on their own lock, so a waiting sender never holds the tree's lock
+	private ReentrantLock waitLock;
+	private Condition appended;
+	// the ring log: the change with sequence number s is in slot s & mask
+	private int mask;
+	private byte[] types;
+	private int[] keys;
+	private String[] infos;
+	private volatile long lastSeq;
+	private int maxBatch;
+	private ServerSocket server;
+	private ArrayList<Socket> followers;
+	private volatile boolean closed;
+	private AtomicLong snapshotCount;
+
+	/**
+	 * public ReplicationLeader(int logCapacity, int maxBatch)
+	 * constructor, the log keeps at least the last logCapacity changes
+	 * (rounded up to a power of 2), and a batch holds at most maxBatch changes.
+	 * Complexity: O(logCapacity)
+	 */
+	public ReplicationLeader(int logCapacity, int maxBatch) {
+		this.tree = new AVLTree();
+		this.epoch = new java.util.Random().nextLong() | 1;
+		this.lock = new ReentrantReadWriteLock();
+		this.waitLock = new ReentrantLock();
+		this.appended = this.waitLock.newCondition();
+		int size = Integer.highestOneBit(Math.max(logCapacity, 2) - 1) << 1;
+		this.mask = size - 1;
+		this.types = new byte[size];
+		this.keys = new int[size];
+		this.infos = new String[size];
+		this.lastSeq = 0;
+		this.maxBatch = Math.max(1, maxBatch);
+		this.followers = new ArrayList<>();
+		this.closed = false;
+		this.snapshotCount = new AtomicLong();
+	}
+
+	/**
+	 * public int start(int port)
+	 * starts accepting followers on localhost port (0 for any free port).
+	 * returns the port, or -1 if it cannot be bound or the leader was started
+	 * Complexity: O(1)
+	 */
+	public int start(int port) {
+		return start(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+	}
+
+	/**
+	 * public int start(InetSocketAddress address)
+	 * starts accepting followers on address. returns the bound port, or -1
+	 * if it cannot be bound or the leader was started
+	 * Complexity: O(1)
+	 */
+	public synchronized int start(InetSocketAddress address) {
+		if (this.server != null || this.closed) return -1;
+		try {
+			this.server = new ServerSocket();
+			this.server.bind(address);
+		} catch (IOException e) {
+			this.server = null;
+			return -1;
+		}
+		Thread acceptor = new Thread(this::acceptLoop, "replication-accept");
+		acceptor.setDaemon(true);
+		acceptor.start();
+		return this.server.getLocalPort();
+	}
+
+	/**
+	 * public String search(int k)
+	 * returns the info of an item with key k if it exists in the tree
+	 * otherwise, returns null
+	 * Complexity: O(logn)
+	 */
+	public String search(int k) {
+		this.lock.readLock().lock();
+		try {
+			return this.tree.search(k);
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * public int insert(int k, String i)
+	 * inserts an item and logs it for the followers, see AVLTree.insert
+	 * Complexity: O(logn)
+	 */
+	public int insert(int k, String i) {
+		this.lock.writeLock().lock();
+		try {
+			int result = this.tree.insert(k, i);
+			if (result != -1) append(ChangeFeed.INSERT, k, i);
+			return result;
+		} finally {
+			this.lock.writeLock().unlock();
+			signalAppended();
+		}
+	}
+
+	/**
+	 * public int delete(int k)
+	 * deletes an item and logs it for the followers, see AVLTree.delete
+	 * Complexity: O(logn)
+	 */
+	public int delete(int k) {
+		this.lock.writeLock().lock();
+		try {
+			int result = this.tree.delete(k);
+			if (result != -1) append(ChangeFeed.DELETE, k, null);
+			return result;
+		} finally {
+			this.lock.writeLock().unlock();
+			signalAppended();
+		}
+	}
+
+	/**
+	 * public int size()
+	 * returns the number of items in the tree
+	 * Complexity: O(1)
+	 */
+	public int size() {
+		this.lock.readLock().lock();
+		try {
+			return this.tree.size();
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * public long getLastSequence()
+	 * returns the sequence number of the last change, 0 if there was none
+	 * Complexity: O(1)
+	 */
+	public long getLastSequence() {
+		return this.lastSeq;
+	}
+
+	/**
+	 * public int getFollowerCount()
+	 * returns the number of connected followers
+	 * Complexity: O(1)
+	 */
+	public synchronized int getFollowerCount() {
+		return this.followers.size();
+	}
+
+	/**
+	 * public long getSnapshotCount()
+	 * returns the number of snapshots sent to followers
+	 * Complexity: O(1)
+	 */
+	public long getSnapshotCount() {
+		return this.snapshotCount.get();
+	}
+
+	/**
+	 * public void close()
+	 * stops accepting followers and disconnects the connected ones
+	 * Complexity: O(followers)
+	 */
+	public void close() {
+		synchronized (this) {
+			if (this.closed) return;
+			this.closed = true;
+			closeQuietly(this.server);
+			for (Socket s : this.followers) closeQuietly(s);
+			this.followers.clear();
+		}
+		signalAppended();
+	}
+
+	/**
+	 * private void append(int type, int key, String info)
+	 * adds a change to the ring log
+	 * @pre the write lock is held
+	 * Complexity: O(1)
+	 */
+	private void append(int type, int key, String info) {
+		int slot = (int) (this.lastSeq + 1) & this.mask;
+		this.types[slot] = (byte) type;
+		this.keys[slot] = key;
+		this.infos[slot] = info;
+		this.lastSeq++;
+	}
+
+	/**
+	 * private void signalAppended()
+	 * wakes up the senders waiting for changes
+	 * Complexity: O(1)
+	 */
+	private void signalAppended() {
+		this.waitLock.lock();
+		try {
+			this.appended.signalAll();
+		} finally {
+			this.waitLock.unlock();
+		}
+	}
+
+	/**
+	 * private void acceptLoop()
+	 * accepts followers and starts a sender thread for each, until the
+	 * server socket is closed. a failed accept is retried after a short sleep
+	 */
+	private void acceptLoop() {
+		while (!this.closed) {
+			Socket socket;
+			try {
+				socket = this.server.accept();
+				socket.setTcpNoDelay(true);
+			} catch (IOException e) {
+				if (this.server.isClosed()) return;
+				try {
+					Thread.sleep(ACCEPT_RETRY_MILLIS);
+				} catch (InterruptedException ie) {
+					return;
+				}
+				continue;
+			}
+			synchronized (this) {
+				if (this.closed) {
+					closeQuietly(socket);
+					return;
+				}
+				this.followers.add(socket);
+			}
+			Thread sender = new Thread(() -> serve(socket), "replication-sender");
+			sender.setDaemon(true);
+			sender.start();
+		}
+	}
+
+	/**
+	 * private void serve(Socket socket)
+	 * ships the changes a follower does not have until it disconnects
+	 */
+	private void serve(Socket socket) {
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+			Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+			try {
+				// the follower starts with the epoch of its replica and the last sequence number it applied
+				long epoch = in.readLong();
+				long sent = in.readLong();
+				if (epoch != this.epoch) sent = -1;
+				ByteArrayOutputStream raw = new ByteArrayOutputStream();
+				Batch batch = new Batch(this.maxBatch);
+				while (!this.closed) {
+					raw.reset();
+					long next = nextFrame(sent, new DataOutputStream(raw), batch);
+					if (next == sent) continue;
+					writeFrame(out, raw.toByteArray(), deflater);
+					sent = next;
+				}
+			} finally {
+				deflater.end();
+			}
+		} catch (IOException e) {
+			// the follower is gone, it reconnects and asks again
+		} finally {
+			synchronized (this) {
+				this.followers.remove(socket);
+			}
+			closeQuietly(socket);
+		}
+	}
+
+	/**
+	 * private long nextFrame(long sent, DataOutputStream frame, Batch batch)
+	 * waits for changes after sent and writes the raw frame for them: a
+	 * batch, or a snapshot if they are not all in the log anymore (sent is
+	 * -1 for a follower that needs a snapshot anyway). the changes or the
+	 * snapshot's items are copied under the read lock and encoded after it.
+	 * returns the sequence number the follower has after the frame, or sent
+	 * if there was nothing to send
+	 * Complexity: O(batch), O(n) for a snapshot
+	 */
+	private long nextFrame(long sent, DataOutputStream frame, Batch batch) throws IOException {
+		if (!awaitChanges(sent)) return sent;
+		long seq;
+		int count = 0;
+		int[] snapshotKeys = null;
+		String[] snapshotInfos = null;
+		this.lock.readLock().lock();
+		try {
+			seq = this.lastSeq;
+			if (sent < 0 || sent < seq - this.mask - 1 || sent > seq) {
+				// the follower is too far behind (or from another leader)
+				snapshotKeys = new int[this.tree.size()];
+				snapshotInfos = new String[snapshotKeys.length];
+				this.tree.toArrays(snapshotKeys, snapshotInfos);
+			} else {
+				count = (int) Math.min(this.maxBatch, seq - sent);
+				for (int j = 0; j < count; j++) {
+					int slot = (int) (sent + 1 + j) & this.mask;
+					batch.types[j] = this.types[slot];
+					batch.keys[j] = this.keys[slot];
+					batch.infos[j] = this.infos[slot];
+				}
+			}
+		} finally {
+			this.lock.readLock().unlock();
+		}
+		if (snapshotKeys != null) {
+			writeSnapshot(frame, seq, snapshotKeys, snapshotInfos);
+			this.snapshotCount.incrementAndGet();
+			return seq;
+		}
+		frame.writeByte(BATCH);
+		frame.writeLong(sent + 1);
+		frame.writeInt(count);
+		for (int j = 0; j < count; j++) {
+			frame.writeByte(batch.types[j]);
+			frame.writeInt(batch.keys[j]);
+			if (batch.types[j] == ChangeFeed.INSERT) writeString(frame, batch.infos[j]);
+			batch.infos[j] = null;
+		}
+		return sent + count;
+	}
+
+	/**
+	 * private boolean awaitChanges(long sent)
+	 * waits up to IDLE_NANOS for a change after sent. returns true if there
+	 * is one and the leader is open
+	 * Complexity: O(1), plus the wait
+	 */
+	private boolean awaitChanges(long sent) {
+		this.waitLock.lock();
+		try {
+			if (this.lastSeq == sent && !this.closed) this.appended.awaitNanos(IDLE_NANOS);
+			return this.lastSeq != sent && !this.closed;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		} finally {
+			this.waitLock.unlock();
+		}
+	}
+
+	/**
+	 * private void writeSnapshot(DataOutputStream frame, long seq, int[] keys, String[] infos)
+	 * writes the raw snapshot of the tree's items at sequence number seq
+	 * Complexity: O(n)
+	 */
+	private void writeSnapshot(DataOutputStream frame, long seq, int[] keys, String[] infos) throws IOException {
+		frame.writeByte(SNAPSHOT);
+		frame.writeLong(this.epoch);
+		frame.writeLong(seq);
+		frame.writeInt(keys.length);
+		for (int j = 0; j < keys.length; j++) {
+			frame.writeInt(keys[j]);
+			writeString(frame, infos[j]);
+		}
+	}
+
+	/**
+	 * private static class Batch
+	 * a sender's copy of the changes of one batch
+	 */
+	private static class Batch {
+		private byte[] types;
+		private int[] keys;
+		private String[] infos;
+
+		private Batch(int size) {
+			this.types = new byte[size];
+			this.keys = new int[size];
+			this.infos = new String[size];
+		}
+	}
+
+	/**
+	 * static void writeFrame(DataOutputStream out, byte[] raw, Deflater deflater)
+	 * compresses raw and writes it as a frame. throws an IOException if raw
+	 * is longer than MAX_FRAME
+	 * Complexity: O(length of raw)
+	 */
+	static void writeFrame(DataOutputStream out, byte[] raw, Deflater deflater) throws IOException {
+		if (raw.length > MAX_FRAME) throw new IOException("frame too large: " + raw.length);
+		deflater.reset();
+		deflater.setInput(raw);
+		deflater.finish();
+		byte[] compressed = new byte[Math.max(64, raw.length / 2)];
+		int length = 0;
+		while (!deflater.finished()) {
+			if (length == compressed.length) compressed = java.util.Arrays.copyOf(compressed, length * 2);
+			length += deflater.deflate(compressed, length, compressed.length - length);
+		}
+		out.writeInt(raw.length);
+		out.writeInt(length);
+		out.write(compressed, 0, length);
+		out.flush();
+	}
+
+	/**
+	 * static byte[] readFrame(DataInputStream in, Inflater inflater)
+	 * reads a frame and returns it uncompressed. throws an IOException for
+	 * a frame longer than MAX_FRAME, before allocating it
+	 * Complexity: O(length of the frame)
+	 */
+	static byte[] readFrame(DataInputStream in, Inflater inflater) throws IOException {
+		int rawLength = in.readInt();
+		int length = in.readInt();
+		// deflate adds at most a few bytes per 16 KiB block to incompressible data
+		if (rawLength < 0 || length < 0 || rawLength > MAX_FRAME || length > rawLength + (rawLength >> 8) + 64) {
+			throw new IOException("malformed frame");
+		}
+		byte[] compressed = new byte[length];
+		in.readFully(compressed);
+		byte[] raw = new byte[rawLength];
+		inflater.reset();
+		inflater.setInput(compressed);
+		try {
+			int at = 0;
+			while (at < rawLength) {
+				int n = inflater.inflate(raw, at, rawLength - at);
+				if (n == 0 && (inflater.finished() || inflater.needsInput())) throw new IOException("truncated frame");
+				at += n;
+			}
+		} catch (DataFormatException e) {
+			throw new IOException("malformed frame", e);
+		}
+		return raw;
+	}
+
+	/**
+	 * static void writeString(DataOutputStream out, String s)
+	 * writes s as its UTF-8 length (-1 for null) and bytes
+	 */
+	static void writeString(DataOutputStream out, String s) throws IOException {
+		if (s == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] b = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(b.length);
+		out.write(b);
+	}
+
+	/**
+	 * static String readString(DataInputStream in)
+	 * reads a string written by writeString from an uncompressed frame
+	 * (in.available() is what is left of the frame)
+	 */
+	static String readString(DataInputStream in) throws IOException {
+		int n = in.readInt();
+		if (n < 0) return null;
+		if (n > in.available()) throw new IOException("malformed string");
+		byte[] b = new byte[n];
+		in.readFully(b);
+		return new String(b, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * static void closeQuietly(java.io.Closeable c)
+	 * closes c, ignoring errors
+	 */
+	static void closeQuietly(java.io.Closeable c) {
+		if (c == null) return;
+		try {
+			c.close();
+		} catch (IOException e) {
+			// nothing to do
+		}
+	}
+}
@@ -0,0 +1,108 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Inflater;
+
+/**
+ *
+ * Replication test
+ *
+ * Runs a ReplicationLeader and three ReplicationFollowers over localhost:
+ * random inserts and deletes, forced disconnects, and a follower that lags
+ * past the leader's log and has to get a snapshot. After every round the
+ * replicas are compared to a reference map. Also checks that a frame with
+ * a corrupt length is rejected before it is allocated.
+ * Run with: java ReplicationTest (exits with status 1 on a failure)
+ *
+ */
+
+public class ReplicationTest {
+	public static void main(String[] args) throws IOException {
+		Random random = new Random(47);
+		ReplicationLeader leader = new ReplicationLeader(256, 64);
+		int port = leader.start(0);
+		check(port > 0, "the leader binds a free port");
+		InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+		TreeMap<Integer, String> reference = new TreeMap<>();
+		for (int j = 0; j < 500; j++) {
+			int k = random.nextInt(1000);
+			if (leader.insert(k, "a" + k) != -1) reference.put(k, "a" + k);
+		}
+		ReplicationFollower[] followers = new ReplicationFollower[3];
+		for (int f = 0; f < followers.length; f++) {
+			followers[f] = new ReplicationFollower(address);
+			followers[f].start();
+		}
+		for (int round = 0; round < 20; round++) {
+			for (int j = 0; j < 2000; j++) {
+				int k = random.nextInt(3000);
+				if (random.nextBoolean()) {
+					String info = (random.nextInt(5) == 0) ? null : "v" + j;
+					if (leader.insert(k, info) != -1) reference.put(k, info);
+				} else if (leader.delete(k) != -1) {
+					reference.remove(k);
+				}
+			}
+			if (round % 5 == 2) followers[1].disconnect();
+			for (ReplicationFollower f : followers) checkReplica(leader, f, reference, "round " + round);
+		}
+
+		// the leader logs 256 changes, the follower misses 5000 while it reconnects
+		ReplicationFollower lagging = followers[2];
+		long snapshots = lagging.getSnapshotCount();
+		lagging.disconnect();
+		for (int j = 0; j < 5000; j++) {
+			int k = random.nextInt(3000);
+			if (leader.insert(k, "z" + j) != -1) reference.put(k, "z" + j);
+		}
+		checkReplica(leader, lagging, reference, "lagging follower");
+		check(lagging.getSnapshotCount() > snapshots, "a follower behind the log gets a snapshot");
+
+		for (ReplicationFollower f : followers) f.close();
+		leader.close();
+
+		ByteArrayOutputStream header = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(header);
+		out.writeInt(Integer.MAX_VALUE);
+		out.writeInt(Integer.MAX_VALUE);
+		Inflater inflater = new Inflater();
+		boolean rejected = false;
+		try {
+			ReplicationLeader.readFrame(new DataInputStream(new ByteArrayInputStream(header.toByteArray())), inflater);
+		} catch (IOException e) {
+			rejected = true;
+		} finally {
+			inflater.end();
+		}
+		check(rejected, "a frame longer than MAX_FRAME is rejected");
+		System.out.println("ReplicationTest passed");
+	}
+
+	private static void checkReplica(ReplicationLeader leader, ReplicationFollower follower, TreeMap<Integer, String> reference, String when) {
+		check(follower.awaitSequence(leader.getLastSequence(), 10, TimeUnit.SECONDS), when + ": the follower catches up");
+		int[] keys = follower.keysToArray();
+		String[] infos = follower.infoToArray();
+		check(keys.length == reference.size(), when + ": the replica has the leader's size");
+		int j = 0;
+		for (Map.Entry<Integer, String> e : reference.entrySet()) {
+			check(keys[j] == e.getKey() && Objects.equals(infos[j], e.getValue()), when + ": the replica has the leader's items");
+			j++;
+		}
+	}
+
+	private static void check(boolean ok, String what) {
+		if (!ok) {
+			System.out.println("ReplicationTest failed: " + what);
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,21 @@
+/**
+ *
+ * Search tree
+ *
+ * The dictionary API shared by the search trees of distinct int keys and
+ * String info, so a workload can choose its tree: AVLTree keeps every key
+ * at O(logn) depth, SplayTree moves the keys it accesses to the root.
+ *
+ */
+
+public interface SearchTree {
+	public boolean empty(); // returns true if and only if the tree is empty
+	public String search(int k); // returns the info of key k, or null if it is not in the tree
+	public int insert(int k, String i); // returns the number of rebalancing operations, or -1 if k is in the tree
+	public int delete(int k); // returns the number of rebalancing operations, or -1 if k is not in the tree
+	public String min(); // returns the info of the smallest key, or null if the tree is empty
+	public String max(); // returns the info of the largest key, or null if the tree is empty
+	public int[] keysToArray(); // returns the keys in sorted order
+	public String[] infoToArray(); // returns the info sorted by their keys
+	public int size(); // returns the number of items in the tree
+}
@@ -0,0 +1,139 @@
+import java.util.Random;
+
+/**
+ *
+ * Search tree benchmark
+ *
+ * Compares AVLTree and SplayTree on lookups drawn from a Zipf distribution
+ * over the keys, with an optional share of deletes and reinserts.
+ * The same trace is replayed on both trees after a warmup, and the average
+ * time per operation is printed for every skew.
+ *
+ * usage: java SearchTreeBenchmark [keys] [operations] [update percent] [skew...]
+ * e.g.   java SearchTreeBenchmark 1000000 5000000 5 0 0.8 1.0 1.2
+ *
+ */
+
+public class SearchTreeBenchmark {
+	private static final int ROUNDS = 5;
+
+	/**
+	 * public static void main(String[] args)
+	 * runs the benchmark, see the class comment for the arguments
+	 */
+	public static void main(String[] args) {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		int ops = args.length > 1 ? Integer.parseInt(args[1]) : 5000000;
+		int updatePercent = args.length > 2 ? Integer.parseInt(args[2]) : 0;
+		double[] skews = {0.0, 0.8, 0.99, 1.2};
+		if (args.length > 3) {
+			skews = new double[args.length - 3];
+			for (int i = 3; i < args.length; i++) skews[i - 3] = Double.parseDouble(args[i]);
+		}
+		Random random = new Random(42);
+		int[] keys = shuffledKeys(n, random);
+		System.out.printf("%d keys, %d operations, %d%% updates%n", n, ops, updatePercent);
+		System.out.printf("%-8s %14s %14s %8s%n", "skew", "AVLTree ns/op", "Splay ns/op", "ratio");
+		for (double skew : skews) {
+			int[] trace = zipfTrace(keys, ops, skew, random);
+			boolean[] updates = updateMask(ops, updatePercent, random);
+			long avl = best(new AVLTree(), keys, trace, updates);
+			long splay = best(new SplayTree(), keys, trace, updates);
+			System.out.printf("%-8.2f %14.1f %14.1f %8.2f%n", skew,
+					(double) avl / ops, (double) splay / ops, (double) splay / avl);
+		}
+	}
+
+	/**
+	 * private static long best(SearchTree tree, int[] keys, int[] trace, boolean[] updates)
+	 * fills the tree and returns the fastest of ROUNDS replays of the trace in nanoseconds
+	 */
+	private static long best(SearchTree tree, int[] keys, int[] trace, boolean[] updates) {
+		for (int i = 0; i < keys.length; i++) tree.insert(keys[i], "");
+		long best = Long.MAX_VALUE;
+		long sink = 0;
+		for (int round = 0; round < ROUNDS; round++) {
+			long start = System.nanoTime();
+			sink += replay(tree, trace, updates);
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		if (sink == 42) System.out.print("");
+		return best;
+	}
+
+	/**
+	 * private static long replay(SearchTree tree, int[] trace, boolean[] updates)
+	 * runs the trace: a search, or a delete and reinsert of the key if it is
+	 * marked as an update. returns the number of hits, so the work is not
+	 * optimized away
+	 */
+	private static long replay(SearchTree tree, int[] trace, boolean[] updates) {
+		long hits = 0;
+		for (int i = 0; i < trace.length; i++) {
+			int k = trace[i];
+			if (updates[i]) {
+				tree.delete(k);
+				tree.insert(k, "");
+			} else if (tree.search(k) != null) {
+				hits++;
+			}
+		}
+		return hits;
+	}
+
+	/**
+	 * private static int[] zipfTrace(int[] keys, int ops, double skew, Random random)
+	 * returns ops keys where the key of popularity rank r (1 based) is drawn
+	 * with probability proportional to 1 / r^skew. the ranks are assigned to
+	 * the keys in random order, so hot keys are spread over the key range.
+	 * skew 0 is uniform.
+	 */
+	private static int[] zipfTrace(int[] keys, int ops, double skew, Random random) {
+		int n = keys.length;
+		double[] cdf = new double[n];
+		double sum = 0;
+		for (int r = 0; r < n; r++) {
+			sum += 1.0 / Math.pow(r + 1, skew);
+			cdf[r] = sum;
+		}
+		int[] trace = new int[ops];
+		for (int i = 0; i < ops; i++) {
+			double u = random.nextDouble() * sum;
+			int lo = 0;
+			int hi = n - 1;
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				if (cdf[mid] < u) lo = mid + 1;
+				else hi = mid;
+			}
+			trace[i] = keys[lo];
+		}
+		return trace;
+	}
+
+	/**
+	 * private static boolean[] updateMask(int ops, int percent, Random random)
+	 * marks about percent percent of the operations as updates
+	 */
+	private static boolean[] updateMask(int ops, int percent, Random random) {
+		boolean[] updates = new boolean[ops];
+		for (int i = 0; i < ops; i++) updates[i] = random.nextInt(100) < percent;
+		return updates;
+	}
+
+	/**
+	 * private static int[] shuffledKeys(int n, Random random)
+	 * returns the keys 0, 2, 4, ... 2(n-1) in random order
+	 */
+	private static int[] shuffledKeys(int n, Random random) {
+		int[] keys = new int[n];
+		for (int i = 0; i < n; i++) keys[i] = 2 * i;
+		for (int i = n - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int t = keys[i];
+			keys[i] = keys[j];
+			keys[j] = t;
+		}
+		return keys;
+	}
+}
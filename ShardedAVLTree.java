@@ -0,0 +1,368 @@
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ *
+ * Sharded AVL tree
+ *
+ * A concurrent sorted map of distinct int keys and info, range partitioned
+ * into AVLTree shards. Every shard owns the keys of a fixed range and has
+ * its own StampedLock, so operations on different shards run in parallel.
+ * A shard that grows beyond maxShardSize is split at its median key, and a
+ * shard that shrinks below maxShardSize / 4 is merged into a neighbour,
+ * both with AVLTree's O(logn) split and join. The shard table is copied on
+ * every split or merge, and a replaced shard is marked retired so that
+ * operations that routed to it retry on the new table.
+ *
+ */
+
+public class ShardedAVLTree {
+	private volatile Shard[] shards;
+	private final ReentrantLock rebalanceLock;
+	private int maxShardSize;
+	private int minShardSize;
+
+	/**
+	 * public ShardedAVLTree(int shardCount, int maxShardSize)
+	 * constructor, starts with shardCount shards that divide the int range evenly.
+	 * Complexity: O(shardCount)
+	 */
+	public ShardedAVLTree(int shardCount, int maxShardSize) {
+		Shard[] initial = new Shard[Math.max(1, shardCount)];
+		long width = (1L << 32) / initial.length;
+		for (int i = 0; i < initial.length; i++) {
+			initial[i] = new Shard((int) (Integer.MIN_VALUE + i * width), new AVLTree());
+		}
+		for (int i = 0; i < initial.length; i++) {
+			initial[i].highKey = (i + 1 < initial.length) ? initial[i + 1].lowKey : (1L << 31);
+		}
+		this.shards = initial;
+		this.rebalanceLock = new ReentrantLock();
+		this.maxShardSize = Math.max(maxShardSize, 4);
+		this.minShardSize = this.maxShardSize / 4;
+	}
+
+	/**
+	 * public String search(int k)
+	 * returns the info of an item with key k if it exists in the tree
+	 * otherwise, returns null
+	 * Complexity: O(logn)
+	 */
+	public String search(int k) {
+		while (true) {
+			Shard shard = route(k);
+			long stamp = shard.lock.readLock();
+			try {
+				if (!shard.retired) return shard.tree.search(k);
+			} finally {
+				shard.lock.unlockRead(stamp);
+			}
+		}
+	}
+
+	/**
+	 * public int insert(int k, String i)
+	 * inserts an item with key k and info i.
+	 * returns the number of rebalancing operations in the shard,
+	 * or -1 if an item with key k already exists in the tree.
+	 * Complexity: O(logn)
+	 */
+	public int insert(int k, String i) {
+		while (true) {
+			Shard shard = route(k);
+			int result;
+			boolean tooBig;
+			long stamp = shard.lock.writeLock();
+			try {
+				if (shard.retired) continue;
+				result = shard.tree.insert(k, i);
+				shard.size = shard.tree.size();
+				tooBig = shard.size > this.maxShardSize;
+			} finally {
+				shard.lock.unlockWrite(stamp);
+			}
+			if (tooBig) splitShard(shard);
+			return result;
+		}
+	}
+
+	/**
+	 * public int delete(int k)
+	 * deletes the item with key k if it is there.
+	 * returns the number of rebalancing operations in the shard,
+	 * or -1 if an item with key k was not found in the tree.
+	 * Complexity: O(logn)
+	 */
+	public int delete(int k) {
+		while (true) {
+			Shard shard = route(k);
+			int result;
+			boolean tooSmall;
+			long stamp = shard.lock.writeLock();
+			try {
+				if (shard.retired) continue;
+				result = shard.tree.delete(k);
+				shard.size = shard.tree.size();
+				tooSmall = shard.size < this.minShardSize;
+			} finally {
+				shard.lock.unlockWrite(stamp);
+			}
+			if (tooSmall) mergeShard(shard);
+			return result;
+		}
+	}
+
+	/**
+	 * public int size()
+	 * returns the number of items, a sum of the shards' sizes
+	 * that may be stale while writers are running
+	 * Complexity: O(number of shards)
+	 */
+	public int size() {
+		int size = 0;
+		for (Shard shard : this.shards) size += shard.size;
+		return size;
+	}
+
+	/**
+	 * public boolean empty()
+	 * returns true if and only if the tree is empty
+	 * Complexity: O(number of shards)
+	 */
+	public boolean empty() {
+		return this.size() == 0;
+	}
+
+	/**
+	 * public int shardCount()
+	 * returns the current number of shards
+	 * Complexity: O(1)
+	 */
+	public int shardCount() {
+		return this.shards.length;
+	}
+
+	/**
+	 * public Item treeSelect(int rank)
+	 * returns the item with the given rank (1 is the smallest key) over all
+	 * the shards, found by the shards' sizes, or null if there is no such rank.
+	 * with concurrent writers the rank is relative to a moving snapshot.
+	 * Complexity: O(number of shards + logn)
+	 */
+	public Item treeSelect(int rank) {
+		retry:
+		while (true) {
+			int r = rank;
+			for (Shard shard : this.shards) {
+				if (r > shard.size) {
+					r -= shard.size;
+					continue;
+				}
+				long stamp = shard.lock.readLock();
+				try {
+					if (shard.retired || r < 1 || r > shard.tree.size()) continue retry;
+					AVLTree.IAVLNode node = shard.tree.treeSelect(r);
+					return new Item(node.getKey(), node.getValue());
+				} finally {
+					shard.lock.unlockRead(stamp);
+				}
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * public void forEach(EntryVisitor visitor)
+	 * visits all the items in key order, one shard after the other,
+	 * each shard under its read lock
+	 * Complexity: O(n)
+	 */
+	public void forEach(EntryVisitor visitor) {
+		// the smallest key that was not visited yet
+		long next = Integer.MIN_VALUE;
+		while (next <= Integer.MAX_VALUE) {
+			Shard shard = route((int) next);
+			long stamp = shard.lock.readLock();
+			try {
+				if (shard.retired) continue;
+				AVLTree tree = shard.tree;
+				// a merge may have put already visited keys in this shard
+				int skipped = (next == shard.lowKey) ? 0 : tree.rank((int) next - 1);
+				AVLTree.IAVLNode node = (skipped == tree.size()) ? null : tree.selectNode(skipped + 1);
+				while (node != null) {
+					visitor.visit(node.getKey(), node.getValue());
+					node = tree.findSuccessor(node);
+				}
+				next = shard.highKey;
+			} finally {
+				shard.lock.unlockRead(stamp);
+			}
+		}
+	}
+
+	/**
+	 * public int[] keysToArray()
+	 * Returns a sorted array which contains all keys in the tree
+	 * Complexity: O(n)
+	 */
+	public int[] keysToArray() {
+		IntArrayVisitor visitor = new IntArrayVisitor(this.size());
+		forEach(visitor);
+		return java.util.Arrays.copyOf(visitor.keys, visitor.length);
+	}
+
+	/**
+	 * private Shard route(int k)
+	 * returns the shard that owns key k in the current table
+	 * Complexity: O(log(number of shards))
+	 */
+	private Shard route(int k) {
+		Shard[] current = this.shards;
+		return current[indexOf(current, k)];
+	}
+
+	/**
+	 * private static int indexOf(Shard[] table, int k)
+	 * returns the index of the last shard with lowKey <= k
+	 * Complexity: O(log(number of shards))
+	 */
+	private static int indexOf(Shard[] table, int k) {
+		int lo = 0;
+		int hi = table.length - 1;
+		while (lo < hi) {
+			int mid = (lo + hi + 1) >>> 1;
+			if (table[mid].lowKey <= k) lo = mid;
+			else hi = mid - 1;
+		}
+		return lo;
+	}
+
+	/**
+	 * private void splitShard(Shard shard)
+	 * splits a shard that is too big at its median key into two new shards
+	 * Complexity: O(logn + number of shards)
+	 */
+	private void splitShard(Shard shard) {
+		this.rebalanceLock.lock();
+		try {
+			long stamp = shard.lock.writeLock();
+			try {
+				if (shard.retired || shard.tree.size() <= this.maxShardSize) return;
+				AVLTree.IAVLNode median = shard.tree.selectNode(shard.tree.size() / 2 + 1);
+				int medianKey = median.getKey();
+				String medianInfo = median.getValue();
+				AVLTree[] parts = shard.tree.split(medianKey);
+				parts[1].insert(medianKey, medianInfo);
+				Shard[] current = this.shards;
+				int index = indexOf(current, shard.lowKey);
+				Shard[] table = new Shard[current.length + 1];
+				System.arraycopy(current, 0, table, 0, index);
+				table[index] = new Shard(shard.lowKey, medianKey, parts[0]);
+				table[index + 1] = new Shard(medianKey, shard.highKey, parts[1]);
+				System.arraycopy(current, index + 1, table, index + 2, current.length - index - 1);
+				shard.retired = true;
+				this.shards = table;
+			} finally {
+				shard.lock.unlockWrite(stamp);
+			}
+		} finally {
+			this.rebalanceLock.unlock();
+		}
+	}
+
+	/**
+	 * private void mergeShard(Shard shard)
+	 * merges a shard that is too small with its right neighbour
+	 * (or its left one if it is the last shard), if the result is not too big
+	 * Complexity: O(logn + number of shards)
+	 */
+	private void mergeShard(Shard shard) {
+		this.rebalanceLock.lock();
+		try {
+			Shard[] current = this.shards;
+			if (shard.retired || current.length == 1) return;
+			int index = indexOf(current, shard.lowKey);
+			if (index == current.length - 1) index--;
+			Shard left = current[index];
+			Shard right = current[index + 1];
+			// locks are always taken left to right
+			long leftStamp = left.lock.writeLock();
+			long rightStamp = right.lock.writeLock();
+			try {
+				if (left.tree.size() + right.tree.size() > this.maxShardSize / 2) return;
+				AVLTree merged = left.tree;
+				if (!right.tree.empty()) {
+					// the smallest key of the right shard is the join's middle node
+					AVLTree.IAVLNode pivot = right.tree.selectNode(1);
+					right.tree.delete(pivot.getKey());
+					merged.join(pivot, right.tree);
+				}
+				Shard[] table = new Shard[current.length - 1];
+				System.arraycopy(current, 0, table, 0, index);
+				table[index] = new Shard(left.lowKey, right.highKey, merged);
+				System.arraycopy(current, index + 2, table, index + 1, current.length - index - 2);
+				left.retired = true;
+				right.retired = true;
+				this.shards = table;
+			} finally {
+				right.lock.unlockWrite(rightStamp);
+				left.lock.unlockWrite(leftStamp);
+			}
+		} finally {
+			this.rebalanceLock.unlock();
+		}
+	}
+
+	/**
+	 * public interface EntryVisitor
+	 * receives the items of forEach in key order
+	 */
+	public interface EntryVisitor {
+		public void visit(int key, String info);
+	}
+
+	/**
+	 * private static class IntArrayVisitor
+	 * collects visited keys into a growing array
+	 */
+	private static class IntArrayVisitor implements EntryVisitor {
+		private int[] keys;
+		private int length;
+
+		private IntArrayVisitor(int capacity) {
+			this.keys = new int[Math.max(capacity, 16)];
+			this.length = 0;
+		}
+
+		public void visit(int key, String info) {
+			if (this.length == this.keys.length) this.keys = java.util.Arrays.copyOf(this.keys, this.length * 2);
+			this.keys[this.length++] = key;
+		}
+	}
+
+	/**
+	 * private static class Shard
+	 * an AVLTree owning the keys lowKey <= k < highKey
+	 */
+	private static class Shard {
+		private final int lowKey;
+		private long highKey;
+		private final AVLTree tree;
+		private final StampedLock lock;
+		private volatile int size;
+		private volatile boolean retired;
+
+		private Shard(int lowKey, AVLTree tree) {
+			this(lowKey, 1L << 31, tree);
+		}
+
+		private Shard(int lowKey, long highKey, AVLTree tree) {
+			this.lowKey = lowKey;
+			this.highKey = highKey;
+			this.tree = tree;
+			this.lock = new StampedLock();
+			this.size = tree.size();
+			this.retired = false;
+		}
+	}
+}
@@ -0,0 +1,328 @@
+/**
+ *
+ * SplayTree
+ *
+ * A self adjusting binary search tree with distinct integer keys and info,
+ * behind the same API as AVLTree. Every access splays the accessed node to
+ * the root with the same single rotations AVLTree uses, so frequently
+ * accessed keys stay near the root: on skewed (e.g. Zipfian) lookups the
+ * cost follows the entropy of the accesses instead of logn.
+ * Operations are O(logn) amortized, a single one may be O(n), so all the
+ * walks are iterative.
+ *
+ */
+
+public class SplayTree implements SearchTree {
+	private SplayNode root;
+	private int size;
+
+	/**
+	 *  Complexity: O(1)
+	 */
+	public SplayTree() {
+		this.root = null;
+		this.size = 0;
+	}
+
+	/**
+	 * public boolean empty()
+	 * returns true if and only if the tree is empty
+	 * Complexity: O(1)
+	 */
+	public boolean empty() {
+		return (this.root == null);
+	}
+
+	/**
+	 * public String search(int k)
+	 * returns the info of an item with key k if it exists in the tree
+	 * otherwise, returns null. the last node on the search path is splayed.
+	 * Complexity: O(logn) amortized
+	 */
+	public String search(int k) {
+		SplayNode n = findNode(k);
+		if (n == null) return null;
+		splay(n);
+		return n.key == k ? n.value : null;
+	}
+
+	/**
+	 * public String min()
+	 * Returns the info of the item with the smallest key in the tree,
+	 * or null if the tree is empty. the smallest node is splayed.
+	 * Complexity: O(logn) amortized
+	 */
+	public String min() {
+		if (this.empty()) return null;
+		SplayNode n = this.root;
+		while (n.left != null) n = n.left;
+		splay(n);
+		return n.value;
+	}
+
+	/**
+	 * public String max()
+	 * Returns the info of the item with the largest key in the tree,
+	 * or null if the tree is empty. the largest node is splayed.
+	 * Complexity: O(logn) amortized
+	 */
+	public String max() {
+		if (this.empty()) return null;
+		SplayNode n = this.root;
+		while (n.right != null) n = n.right;
+		splay(n);
+		return n.value;
+	}
+
+	/**
+	 * public int[] keysToArray()
+	 * Returns a sorted array which contains all keys in the tree,
+	 * or an empty array if the tree is empty.
+	 * Complexity: O(n)
+	 */
+	public int[] keysToArray() {
+		int[] keysArr = new int[this.size];
+		int index = 0;
+		for (SplayNode n = first(); n != null; n = successor(n)) {
+			keysArr[index++] = n.key;
+		}
+		return keysArr;
+	}
+
+	/**
+	 * public String[] infoToArray()
+	 * Returns an array which contains all info in the tree,
+	 * sorted by their respective keys,
+	 * or an empty array if the tree is empty.
+	 * Complexity: O(n)
+	 */
+	public String[] infoToArray() {
+		String[] infoArr = new String[this.size];
+		int index = 0;
+		for (SplayNode n = first(); n != null; n = successor(n)) {
+			infoArr[index++] = n.value;
+		}
+		return infoArr;
+	}
+
+	/**
+	 * public int size()
+	 * Returns the number of nodes in the tree.
+	 * Complexity: O(1)
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * public int insert(int k, String i)
+	 * inserts an item with key k and info i and splays it to the root.
+	 * returns the number of rotations, or 0 if no rotations were necessary.
+	 * returns -1 if an item with key k already exists in the tree
+	 * (that item is splayed to the root).
+	 * Complexity: O(logn) amortized
+	 */
+	public int insert(int k, String i) {
+		SplayNode parent = findNode(k);
+		if (parent != null && parent.key == k) {
+			splay(parent);
+			return -1;
+		}
+		SplayNode node = new SplayNode(k, i);
+		node.parent = parent;
+		if (parent == null) this.root = node;
+		else if (k < parent.key) parent.left = node;
+		else parent.right = node;
+		this.size++;
+		return splay(node);
+	}
+
+	/**
+	 * public int delete(int k)
+	 * deletes an item with key k from the tree if it exists:
+	 * k is splayed to the root, and the largest node of its left subtree
+	 * is splayed up and becomes the new root.
+	 * returns the number of rotations, or 0 if no rotations were needed.
+	 * returns -1 if an item with key k was not found in the tree.
+	 * Complexity: O(logn) amortized
+	 */
+	public int delete(int k) {
+		SplayNode node = findNode(k);
+		if (node == null) return -1;
+		int rotations = splay(node);
+		if (node.key != k) return -1;
+		SplayNode left = node.left;
+		SplayNode right = node.right;
+		this.size--;
+		if (left == null) {
+			this.root = right;
+			if (right != null) right.parent = null;
+			return rotations;
+		}
+		// the largest node of the left subtree has no right son after it is splayed
+		left.parent = null;
+		this.root = left;
+		SplayNode n = left;
+		while (n.right != null) n = n.right;
+		rotations += splay(n);
+		n.right = right;
+		if (right != null) right.parent = n;
+		return rotations;
+	}
+
+	/**
+	 * private SplayNode findNode(int k)
+	 * returns the node with key k if it exists in the tree, otherwise the
+	 * last node on the search path, or null if the tree is empty
+	 * Complexity: O(depth of k)
+	 */
+	private SplayNode findNode(int k) {
+		SplayNode x = this.root;
+		SplayNode last = null;
+		while (x != null) {
+			last = x;
+			if (k == x.key) return x;
+			else if (k < x.key) x = x.left;
+			else x = x.right;
+		}
+		return last;
+	}
+
+	/**
+	 * private int splay(SplayNode x)
+	 * moves x to the root with zig, zig-zig and zig-zag steps.
+	 * returns the number of rotations
+	 * Complexity: O(depth of x)
+	 */
+	private int splay(SplayNode x) {
+		int rotations = 0;
+		while (x.parent != null) {
+			SplayNode p = x.parent;
+			SplayNode g = p.parent;
+			if (g == null) {
+				rotateUp(x); // zig
+				rotations++;
+			} else if ((x == p.left) == (p == g.left)) {
+				rotateUp(p); // zig-zig
+				rotateUp(x);
+				rotations += 2;
+			} else {
+				rotateUp(x); // zig-zag
+				rotateUp(x);
+				rotations += 2;
+			}
+		}
+		return rotations;
+	}
+
+	/**
+	 * private void rotateUp(SplayNode y)
+	 * rotates y above its parent
+	 * @pre y.parent != null
+	 * Complexity: O(1)
+	 */
+	private void rotateUp(SplayNode y) {
+		if (y == y.parent.left) rotateRight(y.parent);
+		else rotateLeft(y.parent);
+	}
+
+	/**
+	 * private void rotateLeft(SplayNode x)
+	 * x is parent and y is its right son
+	 * @pre x!=null && y!=null
+	 * @pre x.right == y
+	 * @post y.left == x
+	 * Complexity: O(1)
+	 */
+	private void rotateLeft(SplayNode x) {
+		SplayNode y = x.right;
+		x.right = y.left;
+		if (y.left != null) {
+			y.left.parent = x;
+		}
+		y.parent = x.parent;
+		if (x.parent == null) {
+			this.root = y;
+		}
+		else if (x == x.parent.left) {
+			x.parent.left = y;
+		}
+		else {
+			x.parent.right = y;
+		}
+		y.left = x;
+		x.parent = y;
+	}
+
+	/**
+	 * private void rotateRight(SplayNode x)
+	 * x is parent and y is its left son
+	 * @pre x!=null && y!=null
+	 * @pre x.left == y
+	 * @post y.right == x
+	 * Complexity: O(1)
+	 */
+	private void rotateRight(SplayNode x) {
+		SplayNode y = x.left;
+		x.left = y.right;
+		if (y.right != null) {
+			y.right.parent = x;
+		}
+		y.parent = x.parent;
+		if (x.parent == null) {
+			this.root = y;
+		}
+		else if (x == x.parent.right) {
+			x.parent.right = y;
+		}
+		else {
+			x.parent.left = y;
+		}
+		y.right = x;
+		x.parent = y;
+	}
+
+	/**
+	 * private SplayNode first()
+	 * returns the node with the smallest key without splaying, or null
+	 * Complexity: O(depth)
+	 */
+	private SplayNode first() {
+		SplayNode n = this.root;
+		if (n == null) return null;
+		while (n.left != null) n = n.left;
+		return n;
+	}
+
+	/**
+	 * private SplayNode successor(SplayNode n)
+	 * returns the node with the next key without splaying, or null
+	 * Complexity: O(1) amortized over an inorder walk
+	 */
+	private SplayNode successor(SplayNode n) {
+		if (n.right != null) {
+			n = n.right;
+			while (n.left != null) n = n.left;
+			return n;
+		}
+		while (n.parent != null && n == n.parent.right) n = n.parent;
+		return n.parent;
+	}
+
+	/**
+	 * private static class SplayNode
+	 * a node of the tree, it has no balance information
+	 */
+	private static class SplayNode {
+		private final int key;
+		private final String value;
+		private SplayNode parent;
+		private SplayNode left;
+		private SplayNode right;
+
+		private SplayNode(int key, String value) {
+			this.key = key;
+			this.value = value;
+		}
+	}
+}
@@ -0,0 +1,184 @@
+/**
+ *
+ * Timing wheel
+ *
+ * A hierarchical timing wheel of int keys with deadlines in ticks.
+ * Every level is a ring of 64 buckets: a key due in less than 64 ticks is in
+ * level 0, in bucket deadline mod 64; a key due in less than 64^2 ticks is
+ * in level 1, bucket (deadline / 64) mod 64, and so on. When the wheel's
+ * tick passes a multiple of 64^L, the level L bucket of that tick is
+ * emptied into the lower levels. Every key is moved at most once per level,
+ * so scheduling and expiring take O(1) amortized per key.
+ * Keys are not cancelled: the owner checks a fired key against its current
+ * deadline and ignores stale ones.
+ *
+ */
+
+public class TimingWheel {
+	private static final int BITS = 6;
+	private static final int SLOTS = 1 << BITS;
+	private static final int LEVELS = 7;
+	// the longest delay the wheel holds, later deadlines are moved down again when reached
+	private static final long SPAN = 1L << (BITS * LEVELS);
+
+	private Bucket[][] levels;
+	private long currentTick;
+	private int size;
+
+	/**
+	 * public TimingWheel(long startTick)
+	 * constructor, the wheel's time starts at startTick.
+	 * Complexity: O(1)
+	 */
+	public TimingWheel(long startTick) {
+		this.levels = new Bucket[LEVELS][SLOTS];
+		this.currentTick = startTick;
+		this.size = 0;
+	}
+
+	/**
+	 * public long currentTick()
+	 * returns the last tick the wheel was advanced to
+	 * Complexity: O(1)
+	 */
+	public long currentTick() {
+		return this.currentTick;
+	}
+
+	/**
+	 * public int size()
+	 * returns the number of scheduled keys, stale ones included
+	 * Complexity: O(1)
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * public void schedule(int key, long deadlineTick)
+	 * schedules key to fire when the wheel reaches deadlineTick.
+	 * a deadline that already passed fires on the next advance.
+	 * Complexity: O(1) amortized
+	 */
+	public void schedule(int key, long deadlineTick) {
+		place(key, deadlineTick);
+		this.size++;
+	}
+
+	/**
+	 * public int advance(long nowTick, Expiry expiry)
+	 * moves the wheel to nowTick and passes every key whose deadline is at or
+	 * before nowTick to expiry, in deadline order up to the tick.
+	 * an empty wheel jumps straight to nowTick.
+	 * returns the number of fired keys
+	 * Complexity: O(ticks passed + fired keys), O(1) amortized per key
+	 */
+	public int advance(long nowTick, Expiry expiry) {
+		if (nowTick < this.currentTick) return 0;
+		// keys due at the current tick, e.g. overdue keys scheduled since the last advance
+		int fired = fire(this.currentTick, expiry);
+		while (this.currentTick < nowTick) {
+			if (this.size == 0) {
+				this.currentTick = nowTick;
+				break;
+			}
+			long tick = ++this.currentTick;
+			// higher levels first, so their keys can land in the lower levels' buckets of this tick
+			for (int level = LEVELS - 1; level > 0; level--) {
+				if ((tick & ((1L << (BITS * level)) - 1)) == 0) cascade(level, tick);
+			}
+			fired += fire(tick, expiry);
+		}
+		return fired;
+	}
+
+	/**
+	 * private int fire(long tick, Expiry expiry)
+	 * fires the keys of the level 0 bucket of tick that are due
+	 * Complexity: O(size of the bucket)
+	 */
+	private int fire(long tick, Expiry expiry) {
+		Bucket bucket = this.levels[0][(int) (tick & (SLOTS - 1))];
+		if (bucket == null || bucket.length == 0) return 0;
+		int n = bucket.length;
+		int[] keys = bucket.keys;
+		long[] deadlines = bucket.deadlines;
+		// the bucket is replaced, since expiry may schedule again
+		this.levels[0][(int) (tick & (SLOTS - 1))] = null;
+		int fired = 0;
+		for (int j = 0; j < n; j++) {
+			if (deadlines[j] <= tick) {
+				this.size--;
+				fired++;
+				expiry.expire(keys[j], deadlines[j]);
+			} else {
+				place(keys[j], deadlines[j]);
+			}
+		}
+		return fired;
+	}
+
+	/**
+	 * private void cascade(int level, long tick)
+	 * moves the keys of a level's bucket of tick down to the lower levels
+	 * Complexity: O(size of the bucket)
+	 */
+	private void cascade(int level, long tick) {
+		int slot = (int) ((tick >>> (BITS * level)) & (SLOTS - 1));
+		Bucket bucket = this.levels[level][slot];
+		if (bucket == null || bucket.length == 0) return;
+		this.levels[level][slot] = null;
+		for (int j = 0; j < bucket.length; j++) {
+			place(bucket.keys[j], bucket.deadlines[j]);
+		}
+	}
+
+	/**
+	 * private void place(int key, long deadlineTick)
+	 * puts a key in the bucket of its deadline, in the lowest level that
+	 * holds the deadline's distance from the current tick
+	 * Complexity: O(1) amortized
+	 */
+	private void place(int key, long deadlineTick) {
+		long delay = deadlineTick - this.currentTick;
+		long at = (delay >= SPAN) ? this.currentTick + SPAN - 1 : Math.max(deadlineTick, this.currentTick);
+		int level = 0;
+		delay = at - this.currentTick;
+		while (level < LEVELS - 1 && delay >= (1L << (BITS * (level + 1)))) level++;
+		int slot = (int) ((at >>> (BITS * level)) & (SLOTS - 1));
+		Bucket bucket = this.levels[level][slot];
+		if (bucket == null) {
+			bucket = new Bucket();
+			this.levels[level][slot] = bucket;
+		}
+		bucket.add(key, deadlineTick);
+	}
+
+	/**
+	 * public interface Expiry
+	 * receives the keys that fired
+	 */
+	public interface Expiry {
+		public void expire(int key, long deadlineTick);
+	}
+
+	/**
+	 * private static class Bucket
+	 * the keys of one slot, in growing primitive arrays
+	 */
+	private static class Bucket {
+		private int[] keys = new int[4];
+		private long[] deadlines = new long[4];
+		private int length = 0;
+
+		private void add(int key, long deadline) {
+			if (this.length == this.keys.length) {
+				this.keys = java.util.Arrays.copyOf(this.keys, this.length * 2);
+				this.deadlines = java.util.Arrays.copyOf(this.deadlines, this.length * 2);
+			}
+			this.keys[this.length] = key;
+			this.deadlines[this.length] = deadline;
+			this.length++;
+		}
+	}
+}
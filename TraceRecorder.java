@@ -0,0 +1,278 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ *
+ * Trace recorder
+ *
+ * Records the operations done on a search tree or a TreeList to a compact
+ * binary trace, to be replayed later by TraceReplay.
+ * The trace starts with the int MAGIC and a version byte. Then every
+ * operation is an opcode byte followed by its arguments: ints as zigzag
+ * varints (1 byte for small values), strings as varint length + 1 (0 for
+ * null) and the UTF-8 bytes. The trace ends with END.
+ * The recorder is thread safe, and stops recording at the first I/O error
+ * (see getError).
+ *
+ */
+
+public class TraceRecorder {
+	static final int MAGIC = 0x41564c54;
+	static final int VERSION = 1;
+
+	// opcodes: search tree operations by key
+	static final int END = 0;
+	static final int SEARCH = 1;
+	static final int INSERT = 2;
+	static final int DELETE = 3;
+	// opcodes: TreeList operations by position
+	static final int LIST_RETRIEVE = 4;
+	static final int LIST_INSERT = 5;
+	static final int LIST_DELETE = 6;
+
+	private DataOutputStream out;
+	private long count;
+	private IOException error;
+	private boolean closed;
+
+	/**
+	 * public TraceRecorder(OutputStream out)
+	 * constructor, writes the trace's header to out (buffered).
+	 * Complexity: O(1)
+	 */
+	public TraceRecorder(OutputStream out) {
+		this.out = new DataOutputStream(new BufferedOutputStream(out, 1 << 16));
+		this.count = 0;
+		this.closed = false;
+		try {
+			this.out.writeInt(MAGIC);
+			this.out.writeByte(VERSION);
+		} catch (IOException e) {
+			this.error = e;
+		}
+	}
+
+	/**
+	 * public SearchTree recording(SearchTree tree)
+	 * returns a view of tree that records its search, insert and delete calls
+	 * Complexity: O(1)
+	 */
+	public SearchTree recording(SearchTree tree) {
+		return new RecordingTree(tree);
+	}
+
+	/**
+	 * public void recordSearch(int k)
+	 * records a search of key k
+	 * Complexity: O(1)
+	 */
+	public synchronized void recordSearch(int k) {
+		if (!start(SEARCH)) return;
+		writeInt(k);
+	}
+
+	/**
+	 * public void recordInsert(int k, String i)
+	 * records an insert of key k with info i
+	 * Complexity: O(length of i)
+	 */
+	public synchronized void recordInsert(int k, String i) {
+		if (!start(INSERT)) return;
+		writeInt(k);
+		writeString(i);
+	}
+
+	/**
+	 * public void recordDelete(int k)
+	 * records a delete of key k
+	 * Complexity: O(1)
+	 */
+	public synchronized void recordDelete(int k) {
+		if (!start(DELETE)) return;
+		writeInt(k);
+	}
+
+	/**
+	 * public void recordListRetrieve(int i)
+	 * records a TreeList retrieve of position i
+	 * Complexity: O(1)
+	 */
+	public synchronized void recordListRetrieve(int i) {
+		if (!start(LIST_RETRIEVE)) return;
+		writeInt(i);
+	}
+
+	/**
+	 * public void recordListInsert(int i, int k, String s)
+	 * records a TreeList insert of item (k, s) at position i
+	 * Complexity: O(length of s)
+	 */
+	public synchronized void recordListInsert(int i, int k, String s) {
+		if (!start(LIST_INSERT)) return;
+		writeInt(i);
+		writeInt(k);
+		writeString(s);
+	}
+
+	/**
+	 * public void recordListDelete(int i)
+	 * records a TreeList delete of position i
+	 * Complexity: O(1)
+	 */
+	public synchronized void recordListDelete(int i) {
+		if (!start(LIST_DELETE)) return;
+		writeInt(i);
+	}
+
+	/**
+	 * public long getCount()
+	 * returns the number of recorded operations
+	 * Complexity: O(1)
+	 */
+	public synchronized long getCount() {
+		return this.count;
+	}
+
+	/**
+	 * public IOException getError()
+	 * returns the I/O error that stopped the recording, or null
+	 * Complexity: O(1)
+	 */
+	public synchronized IOException getError() {
+		return this.error;
+	}
+
+	/**
+	 * public int close()
+	 * writes END and closes the stream. returns -1 if the trace is not
+	 * complete because of an I/O error, otherwise 0
+	 * Complexity: O(1)
+	 */
+	public synchronized int close() {
+		if (this.closed) return (this.error == null) ? 0 : -1;
+		this.closed = true;
+		try {
+			if (this.error == null) this.out.writeByte(END);
+			this.out.close();
+		} catch (IOException e) {
+			if (this.error == null) this.error = e;
+		}
+		return (this.error == null) ? 0 : -1;
+	}
+
+	/**
+	 * private boolean start(int op)
+	 * writes an opcode, returns false if recording has stopped
+	 * Complexity: O(1)
+	 */
+	private boolean start(int op) {
+		if (this.closed || this.error != null) return false;
+		this.count++;
+		try {
+			this.out.writeByte(op);
+		} catch (IOException e) {
+			this.error = e;
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * private void writeInt(int v)
+	 * writes v as a zigzag varint
+	 * Complexity: O(1)
+	 */
+	private void writeInt(int v) {
+		writeVarint((v << 1) ^ (v >> 31));
+	}
+
+	/**
+	 * private void writeString(String s)
+	 * writes s as its varint length + 1 (0 for null) and its UTF-8 bytes
+	 * Complexity: O(length of s)
+	 */
+	private void writeString(String s) {
+		if (s == null) {
+			writeVarint(0);
+			return;
+		}
+		byte[] b = s.getBytes(StandardCharsets.UTF_8);
+		writeVarint(b.length + 1);
+		try {
+			this.out.write(b);
+		} catch (IOException e) {
+			this.error = e;
+		}
+	}
+
+	/**
+	 * private void writeVarint(int v)
+	 * writes v, read as unsigned, in groups of 7 bits, low group first
+	 * Complexity: O(1)
+	 */
+	private void writeVarint(int v) {
+		try {
+			while ((v & ~0x7f) != 0) {
+				this.out.writeByte((v & 0x7f) | 0x80);
+				v >>>= 7;
+			}
+			this.out.writeByte(v);
+		} catch (IOException e) {
+			this.error = e;
+		}
+	}
+
+	/**
+	 * private class RecordingTree
+	 * a SearchTree that records the calls it forwards
+	 */
+	private class RecordingTree implements SearchTree {
+		private SearchTree tree;
+
+		private RecordingTree(SearchTree tree) {
+			this.tree = tree;
+		}
+
+		public boolean empty() {
+			return this.tree.empty();
+		}
+
+		public String search(int k) {
+			recordSearch(k);
+			return this.tree.search(k);
+		}
+
+		public int insert(int k, String i) {
+			recordInsert(k, i);
+			return this.tree.insert(k, i);
+		}
+
+		public int delete(int k) {
+			recordDelete(k);
+			return this.tree.delete(k);
+		}
+
+		public String min() {
+			return this.tree.min();
+		}
+
+		public String max() {
+			return this.tree.max();
+		}
+
+		public int[] keysToArray() {
+			return this.tree.keysToArray();
+		}
+
+		public String[] infoToArray() {
+			return this.tree.infoToArray();
+		}
+
+		public int size() {
+			return this.tree.size();
+		}
+	}
+}
@@ -0,0 +1,519 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ *
+ * Trace replay
+ *
+ * Replays a trace written by TraceRecorder against one of the tree or list
+ * implementations and reports the throughput, the latency percentiles of
+ * the operations, the bytes allocated by the replaying threads and the
+ * garbage collections during the replay.
+ * With several threads, tree operations are split among the threads by key,
+ * so the operations on one key keep their order. List operations all run on
+ * the first thread, in their recorded order, since a position depends on
+ * every list operation before it. Implementations that are not thread safe
+ * are guarded by a lock then. Operations the implementation does not have
+ * (list operations on a tree, tree operations on a list) are skipped and
+ * counted. The outcome every operation had in the recorded order (found or
+ * not, done or refused) is computed from the trace, and the operations that
+ * end differently in the replay are counted as diverged.
+ * Each round replays the trace on a new, empty instance; the warmup rounds
+ * are not reported.
+ *
+ * usage: java TraceReplay <trace file> [implementation] [threads] [warmup rounds]
+ * implementations: avl, splay, cached, sharded, async, treelist, concurrentlist
+ * e.g.   java TraceReplay ops.trace sharded 8 2
+ *
+ */
+
+public class TraceReplay {
+	private static final double[] PERCENTILES = {50, 90, 99, 99.9, 99.99};
+	// returned by a target for an operation it does not have
+	public static final int SKIPPED = Integer.MIN_VALUE;
+
+	/**
+	 * public static void main(String[] args)
+	 * runs the replay, see the class comment for the arguments
+	 */
+	public static void main(String[] args) {
+		if (args.length < 1) {
+			System.err.println("usage: java TraceReplay <trace file> [implementation] [threads] [warmup rounds]");
+			System.exit(2);
+		}
+		String name = args.length > 1 ? args[1] : "avl";
+		int threads = args.length > 2 ? Math.max(1, Integer.parseInt(args[2])) : 1;
+		int warmups = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+		Trace trace;
+		try (InputStream in = new FileInputStream(args[0])) {
+			trace = Trace.read(in);
+		} catch (IOException e) {
+			System.err.println("cannot read " + args[0] + ": " + e.getMessage());
+			System.exit(1);
+			return;
+		}
+		if (trace == null || newTarget(name, threads) == null) {
+			System.err.println(trace == null ? "not a trace: " + args[0] : "unknown implementation: " + name);
+			System.exit(2);
+			return;
+		}
+		for (int round = 0; round < warmups; round++) replay(trace, newTarget(name, threads), threads);
+		Result result = replay(trace, newTarget(name, threads), threads);
+		report(name, threads, trace, result);
+	}
+
+	/**
+	 * public static Result replay(Trace trace, Target target, int threads)
+	 * replays the trace on target with the given number of threads
+	 * Complexity: O(operations)
+	 */
+	public static Result replay(Trace trace, Target target, int threads) {
+		Worker[] workers = new Worker[threads];
+		for (int t = 0; t < threads; t++) workers[t] = new Worker(trace, target, t, threads);
+		long gcCount = 0;
+		long gcMillis = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			gcCount -= Math.max(0, gc.getCollectionCount());
+			gcMillis -= Math.max(0, gc.getCollectionTime());
+		}
+		long start = System.nanoTime();
+		Thread[] running = new Thread[threads];
+		for (int t = 0; t < threads; t++) {
+			running[t] = new Thread(workers[t], "replay-" + t);
+			running[t].start();
+		}
+		for (int t = 0; t < threads; t++) {
+			boolean interrupted = false;
+			while (true) {
+				try {
+					running[t].join();
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) Thread.currentThread().interrupt();
+		}
+		Result result = new Result();
+		result.nanos = System.nanoTime() - start;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			gcCount += Math.max(0, gc.getCollectionCount());
+			gcMillis += Math.max(0, gc.getCollectionTime());
+		}
+		result.gcCount = gcCount;
+		result.gcMillis = gcMillis;
+		result.latency = new LatencyHistogram();
+		for (Worker w : workers) {
+			result.latency.add(w.latency);
+			result.operations += w.operations;
+			result.skipped += w.skipped;
+			result.diverged += w.diverged;
+			result.checksum += w.checksum;
+			result.allocatedBytes = (w.allocatedBytes < 0 || result.allocatedBytes < 0) ? -1 : result.allocatedBytes + w.allocatedBytes;
+		}
+		return result;
+	}
+
+	/**
+	 * private static void report(String name, int threads, Trace trace, Result result)
+	 * prints the result of a replay
+	 */
+	private static void report(String name, int threads, Trace trace, Result result) {
+		double seconds = result.nanos / 1e9;
+		System.out.printf("%s, %d thread(s), %d operations in the trace, %d skipped, %d diverged%n",
+				name, threads, trace.length, result.skipped, result.diverged);
+		System.out.printf("time        %12.3f s%n", seconds);
+		System.out.printf("throughput  %12.0f ops/s%n", result.operations / seconds);
+		System.out.printf("latency     %12.1f ns mean%n", result.latency.getMean());
+		for (double p : PERCENTILES) {
+			System.out.printf("  p%-8s %12d ns%n", p, result.latency.getValueAtPercentile(p));
+		}
+		System.out.printf("  max       %12d ns%n", result.latency.getMax());
+		if (result.allocatedBytes < 0) {
+			System.out.printf("allocated   %12s%n", "n/a");
+		} else {
+			System.out.printf("allocated   %12d bytes (%.1f per op)%n", result.allocatedBytes,
+					(double) result.allocatedBytes / Math.max(1, result.operations));
+		}
+		System.out.printf("gc          %12d collections, %d ms%n", result.gcCount, result.gcMillis);
+	}
+
+	/**
+	 * public static Target newTarget(String name, int threads)
+	 * returns a new, empty instance of the named implementation, guarded by a
+	 * lock if threads > 1 and it is not thread safe. returns null for an
+	 * unknown name
+	 * Complexity: O(1)
+	 */
+	public static Target newTarget(String name, int threads) {
+		Target target;
+		boolean threadSafe = false;
+		if (name.equals("avl")) {
+			target = treeTarget(new AVLTree());
+		} else if (name.equals("splay")) {
+			target = treeTarget(new SplayTree());
+		} else if (name.equals("cached")) {
+			CachedAVLTree tree = new CachedAVLTree(1 << 14);
+			target = (op, key, index, info) -> {
+				if (op == TraceRecorder.SEARCH) return (tree.search(key) == null) ? 0 : 1;
+				if (op == TraceRecorder.INSERT) return tree.insert(key, info);
+				if (op == TraceRecorder.DELETE) return tree.delete(key);
+				return SKIPPED;
+			};
+		} else if (name.equals("sharded")) {
+			ShardedAVLTree tree = new ShardedAVLTree(Math.max(4, 4 * threads), 1 << 16);
+			target = (op, key, index, info) -> {
+				if (op == TraceRecorder.SEARCH) return (tree.search(key) == null) ? 0 : 1;
+				if (op == TraceRecorder.INSERT) return tree.insert(key, info);
+				if (op == TraceRecorder.DELETE) return tree.delete(key);
+				return SKIPPED;
+			};
+			threadSafe = true;
+		} else if (name.equals("async")) {
+			AsyncAVLTree tree = new AsyncAVLTree(new AVLTree(), ForkJoinPool.commonPool(), 256, 0);
+			target = (op, key, index, info) -> {
+				if (op == TraceRecorder.SEARCH) return (tree.searchAsync(key).join() == null) ? 0 : 1;
+				if (op == TraceRecorder.INSERT) return tree.insert(key, info);
+				if (op == TraceRecorder.DELETE) return tree.delete(key);
+				return SKIPPED;
+			};
+			threadSafe = true;
+		} else if (name.equals("treelist")) {
+			TreeList list = new TreeList();
+			target = (op, key, index, info) -> {
+				if (op == TraceRecorder.LIST_RETRIEVE) return (list.retrieve(index) == null) ? 0 : 1;
+				if (op == TraceRecorder.LIST_INSERT) return list.insert(index, key, info);
+				if (op == TraceRecorder.LIST_DELETE) return list.delete(index);
+				return SKIPPED;
+			};
+		} else if (name.equals("concurrentlist")) {
+			ConcurrentTreeList list = new ConcurrentTreeList();
+			target = (op, key, index, info) -> {
+				if (op == TraceRecorder.LIST_RETRIEVE) return (list.retrieve(index) == null) ? 0 : 1;
+				if (op == TraceRecorder.LIST_INSERT) return list.insert(index, key, info);
+				if (op == TraceRecorder.LIST_DELETE) return list.delete(index);
+				return SKIPPED;
+			};
+			threadSafe = true;
+		} else {
+			return null;
+		}
+		if (threads == 1 || threadSafe) return target;
+		Target unsafe = target;
+		ReentrantLock lock = new ReentrantLock();
+		return (op, key, index, info) -> {
+			lock.lock();
+			try {
+				return unsafe.apply(op, key, index, info);
+			} finally {
+				lock.unlock();
+			}
+		};
+	}
+
+	/**
+	 * private static Target treeTarget(SearchTree tree)
+	 * returns a target that runs the tree operations on a SearchTree
+	 * Complexity: O(1)
+	 */
+	private static Target treeTarget(SearchTree tree) {
+		return (op, key, index, info) -> {
+			if (op == TraceRecorder.SEARCH) return (tree.search(key) == null) ? 0 : 1;
+			if (op == TraceRecorder.INSERT) return tree.insert(key, info);
+			if (op == TraceRecorder.DELETE) return tree.delete(key);
+			return SKIPPED;
+		};
+	}
+
+	/**
+	 * public interface Target
+	 * runs one operation of a trace, returns SKIPPED if it does not have it
+	 */
+	public interface Target {
+		public int apply(int op, int key, int index, String info);
+	}
+
+	/**
+	 * public static class Result
+	 * the measurements of one replay. diverged counts the operations whose
+	 * outcome differs from the recorded order. checksum is the sum of the
+	 * operations' results, so the calls' results are used. allocatedBytes
+	 * is -1 if the JVM does not measure allocation per thread
+	 */
+	public static class Result {
+		public long nanos;
+		public long operations;
+		public long skipped;
+		public long diverged;
+		public long checksum;
+		public LatencyHistogram latency;
+		public long allocatedBytes;
+		public long gcCount;
+		public long gcMillis;
+	}
+
+	/**
+	 * private static class Worker
+	 * replays the operations of the trace that belong to one thread
+	 */
+	private static class Worker implements Runnable {
+		private Trace trace;
+		private Target target;
+		private int thread;
+		private int threads;
+		private LatencyHistogram latency;
+		private long operations;
+		private long skipped;
+		private long diverged;
+		private long allocatedBytes;
+		private long checksum;
+
+		private Worker(Trace trace, Target target, int thread, int threads) {
+			this.trace = trace;
+			this.target = target;
+			this.thread = thread;
+			this.threads = threads;
+			this.latency = new LatencyHistogram();
+		}
+
+		public void run() {
+			long allocatedBefore = allocatedBytes();
+			Trace t = this.trace;
+			for (int j = 0; j < t.length; j++) {
+				int op = t.ops[j];
+				// operations by key go to the key's thread, positional ones to the first thread
+				int owner = (op <= TraceRecorder.DELETE) ? spread(t.keys[j]) : 0;
+				if (this.threads > 1 && Integer.remainderUnsigned(owner, this.threads) != this.thread) continue;
+				long start = System.nanoTime();
+				int result = this.target.apply(op, t.keys[j], t.indexes[j], t.infos[j]);
+				long end = System.nanoTime();
+				if (result == SKIPPED) {
+					this.skipped++;
+					continue;
+				}
+				this.latency.record(end - start);
+				this.operations++;
+				this.checksum += result;
+				if (succeeded(op, result) != t.succeeds[j]) this.diverged++;
+			}
+			long allocatedAfter = allocatedBytes();
+			this.allocatedBytes = (allocatedBefore < 0 || allocatedAfter < 0) ? -1 : allocatedAfter - allocatedBefore;
+		}
+
+		/**
+		 * private static boolean succeeded(int op, int result)
+		 * returns true if a target's result means the operation found its
+		 * item (searches and retrieves) or was done (updates)
+		 */
+		private static boolean succeeded(int op, int result) {
+			if (op == TraceRecorder.SEARCH || op == TraceRecorder.LIST_RETRIEVE) return result == 1;
+			return result != -1;
+		}
+
+		/**
+		 * private static int spread(int key)
+		 * mixes a key's bits, so nearby keys go to different threads
+		 */
+		private static int spread(int key) {
+			int h = key * 0x9E3779B9;
+			return h ^ (h >>> 16);
+		}
+
+		/**
+		 * private static long allocatedBytes()
+		 * returns the bytes allocated by the current thread so far, or -1 if
+		 * the JVM does not tell
+		 */
+		private static long allocatedBytes() {
+			java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+			if (!(bean instanceof com.sun.management.ThreadMXBean)) return -1;
+			com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+			if (!sunBean.isThreadAllocatedMemorySupported() || !sunBean.isThreadAllocatedMemoryEnabled()) return -1;
+			return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+	}
+
+	/**
+	 * public static class Trace
+	 * a trace read into parallel arrays: per operation its opcode, its key,
+	 * its position (list operations), its info and whether it succeeded when
+	 * the trace was run in its recorded order on an empty instance
+	 */
+	public static class Trace {
+		public int length;
+		public byte[] ops;
+		public int[] keys;
+		public int[] indexes;
+		public String[] infos;
+		public boolean[] succeeds;
+
+		private Trace() {
+			this.length = 0;
+			this.ops = new byte[1024];
+			this.keys = new int[1024];
+			this.indexes = new int[1024];
+			this.infos = new String[1024];
+		}
+
+		/**
+		 * public static Trace read(InputStream in)
+		 * reads a whole trace, returns null if in does not hold a trace.
+		 * a trace cut short (e.g. its recorder was not closed) is read up to
+		 * its last whole operation
+		 * Complexity: O(length of the trace)
+		 */
+		public static Trace read(InputStream in) throws IOException {
+			DataInputStream data = new DataInputStream(new BufferedInputStream(in, 1 << 16));
+			try {
+				if (data.readInt() != TraceRecorder.MAGIC || data.readUnsignedByte() != TraceRecorder.VERSION) return null;
+			} catch (EOFException e) {
+				return null;
+			}
+			Trace trace = new Trace();
+			try {
+				while (true) {
+					int op = data.readUnsignedByte();
+					int key = 0;
+					int index = 0;
+					String info = null;
+					if (op == TraceRecorder.END) break;
+					switch (op) {
+					case TraceRecorder.SEARCH:
+					case TraceRecorder.DELETE:
+						key = readInt(data);
+						break;
+					case TraceRecorder.INSERT:
+						key = readInt(data);
+						info = readString(data);
+						break;
+					case TraceRecorder.LIST_RETRIEVE:
+					case TraceRecorder.LIST_DELETE:
+						index = readInt(data);
+						break;
+					case TraceRecorder.LIST_INSERT:
+						index = readInt(data);
+						key = readInt(data);
+						info = readString(data);
+						break;
+					default:
+						return null;
+					}
+					trace.add(op, key, index, info);
+				}
+			} catch (EOFException e) {
+				// the trace was cut short, keep what was read
+			}
+			trace.succeeds = trace.outcomes();
+			return trace;
+		}
+
+		/**
+		 * private boolean[] outcomes()
+		 * runs the trace in order on a model (the infos of the present keys,
+		 * the length of the list) and returns which operations succeed:
+		 * a search finds a non null info, an insert finds no item with its key,
+		 * a delete finds one, and a list operation is in the list's bounds
+		 * Complexity: O(length of the trace) expected
+		 */
+		private boolean[] outcomes() {
+			boolean[] result = new boolean[this.length];
+			IntHashMap<String> items = new IntHashMap<>();
+			int listSize = 0;
+			for (int j = 0; j < this.length; j++) {
+				int k = this.keys[j];
+				int i = this.indexes[j];
+				switch (this.ops[j]) {
+				case TraceRecorder.SEARCH:
+					result[j] = items.get(k) != null;
+					break;
+				case TraceRecorder.INSERT:
+					result[j] = !items.containsKey(k);
+					if (result[j]) items.put(k, this.infos[j]);
+					break;
+				case TraceRecorder.DELETE:
+					result[j] = items.containsKey(k);
+					items.remove(k);
+					break;
+				case TraceRecorder.LIST_RETRIEVE:
+					result[j] = i >= 0 && i < listSize;
+					break;
+				case TraceRecorder.LIST_INSERT:
+					result[j] = i >= 0 && i <= listSize;
+					if (result[j]) listSize++;
+					break;
+				case TraceRecorder.LIST_DELETE:
+					result[j] = i >= 0 && i < listSize;
+					if (result[j]) listSize--;
+					break;
+				default:
+					break;
+				}
+			}
+			return result;
+		}
+
+		/**
+		 * private void add(int op, int key, int index, String info)
+		 * appends an operation, growing the arrays if needed
+		 * Complexity: O(1) amortized
+		 */
+		private void add(int op, int key, int index, String info) {
+			if (this.length == this.ops.length) {
+				int n = this.length * 2;
+				this.ops = java.util.Arrays.copyOf(this.ops, n);
+				this.keys = java.util.Arrays.copyOf(this.keys, n);
+				this.indexes = java.util.Arrays.copyOf(this.indexes, n);
+				this.infos = java.util.Arrays.copyOf(this.infos, n);
+			}
+			this.ops[this.length] = (byte) op;
+			this.keys[this.length] = key;
+			this.indexes[this.length] = index;
+			this.infos[this.length] = info;
+			this.length++;
+		}
+
+		/**
+		 * private static int readInt(DataInputStream in)
+		 * reads a zigzag varint
+		 */
+		private static int readInt(DataInputStream in) throws IOException {
+			int v = readVarint(in);
+			return (v >>> 1) ^ -(v & 1);
+		}
+
+		/**
+		 * private static String readString(DataInputStream in)
+		 * reads a string written by TraceRecorder
+		 */
+		private static String readString(DataInputStream in) throws IOException {
+			int n = readVarint(in);
+			if (n == 0) return null;
+			byte[] b = new byte[n - 1];
+			in.readFully(b);
+			return new String(b, StandardCharsets.UTF_8);
+		}
+
+		/**
+		 * private static int readVarint(DataInputStream in)
+		 * reads an int in groups of 7 bits, low group first
+		 */
+		private static int readVarint(DataInputStream in) throws IOException {
+			int v = 0;
+			for (int shift = 0; shift < 35; shift += 7) {
+				int b = in.readUnsignedByte();
+				v |= (b & 0x7f) << shift;
+				if ((b & 0x80) == 0) return v;
+			}
+			throw new IOException("malformed varint");
+		}
+	}
+}
@@ -0,0 +1,214 @@
+/**
+ *
+ * Tree diff
+ *
+ * Compares two AVLTrees that keep a subtree hash, in time proportional to
+ * the difference instead of the trees' sizes. Both trees are created with
+ * the HASH monoid, so every node keeps the hash of its subtree's items,
+ * maintained like size on inserts, deletes and rotations. The diff walks
+ * the first tree; every subtree covers a key range, and if the second tree
+ * has the same hash and number of items in that range the subtree is
+ * skipped without being entered.
+ * The hash is a 64 bit sum of mixed item hashes, and every info is hashed
+ * over all its chars into 64 bits (not String.hashCode, whose 32 bits
+ * collide for strings like "Aa" and "BB"). Two different ranges are taken
+ * as equal only if their 64 bit sums collide, about 2^-64 for data that is
+ * not crafted against the hash (it is not a cryptographic hash).
+ *
+ */
+
+public class TreeDiff {
+	/**
+	 * the subtree hash: the sum of a 64 bit mix of every item's key and info.
+	 * the sum does not depend on the tree's shape, so equal ranges of two
+	 * trees have equal hashes.
+	 */
+	public static final AVLTree.Monoid HASH = new AVLTree.Monoid() {
+		public long identity() {
+			return 0;
+		}
+
+		public long combine(long a, long b) {
+			return a + b;
+		}
+
+		public long lift(int key, String info) {
+			return itemHash(key, info);
+		}
+
+		public long power(long a, int n) {
+			return a * n;
+		}
+	};
+
+	/**
+	 * public static int diff(AVLTree from, AVLTree to, Listener listener)
+	 * reports the changes that turn from into to: keys only in to are added,
+	 * keys only in from are removed, and keys in both with different info
+	 * are changed. the changes are reported in key order.
+	 * returns the number of changes.
+	 * @pre both trees were created with the HASH monoid, not in multiset mode
+	 * Complexity: O(d log^2 n) for d changes
+	 */
+	public static int diff(AVLTree from, AVLTree to, Listener listener) {
+		return diffRange(from.getRoot(), Integer.MIN_VALUE, Integer.MAX_VALUE, to, listener);
+	}
+
+	/**
+	 * public static int sync(AVLTree target, AVLTree source)
+	 * changes target to have the same items as source, updating only the
+	 * keys that differ. returns the number of changed keys.
+	 * @pre both trees were created with the HASH monoid, not in multiset mode
+	 * Complexity: O(d log^2 n) for d changes
+	 */
+	public static int sync(AVLTree target, AVLTree source) {
+		ChangeList changes = new ChangeList();
+		diff(target, source, changes);
+		for (int j = 0; j < changes.length; j++) {
+			int k = changes.keys[j];
+			if (changes.kinds[j] != ChangeList.ADDED) target.delete(k);
+			if (changes.kinds[j] != ChangeList.REMOVED) target.insert(k, changes.infos[j]);
+		}
+		return changes.length;
+	}
+
+	/**
+	 * private static int diffRange(AVLTree.IAVLNode node, long lo, long hi, AVLTree to, Listener listener)
+	 * diffs the items of from in node's subtree, which are exactly from's
+	 * items with lo <= key <= hi, against to's items in the same range.
+	 * returns the number of changes
+	 * Complexity: O(log^2 n) per change
+	 */
+	private static int diffRange(AVLTree.IAVLNode node, long lo, long hi, AVLTree to, Listener listener) {
+		if (lo > hi) return 0;
+		int size = (node == null) ? 0 : ((AVLTree.AVLNode) node).getSize();
+		long hash = (node == null) ? 0 : ((AVLTree.AVLNode) node).getAggregate();
+		if (size == countRange(to, lo, hi) && hash == to.aggregate((int) lo, (int) hi)) return 0;
+		if (node == null) return reportAdded(to, lo, hi, listener);
+		int k = node.getKey();
+		int changes = diffRange(node.getLeft(), lo, (long) k - 1, to, listener);
+		AVLTree.IAVLNode other = to.findNode(k);
+		if (other == null) {
+			listener.onRemoved(k, node.getValue());
+			changes++;
+		} else if (!equal(node.getValue(), other.getValue())) {
+			listener.onChanged(k, node.getValue(), other.getValue());
+			changes++;
+		}
+		return changes + diffRange(node.getRight(), (long) k + 1, hi, to, listener);
+	}
+
+	/**
+	 * private static int reportAdded(AVLTree to, long lo, long hi, Listener listener)
+	 * reports all of to's items with lo <= key <= hi as added, returns their number
+	 * Complexity: O(logn + number of items)
+	 */
+	private static int reportAdded(AVLTree to, long lo, long hi, Listener listener) {
+		int below = (lo == Integer.MIN_VALUE) ? 0 : to.rank((int) lo - 1);
+		if (below == to.size()) return 0;
+		int changes = 0;
+		AVLTree.IAVLNode n = to.selectNode(below + 1);
+		while (n != null && n.getKey() <= hi) {
+			listener.onAdded(n.getKey(), n.getValue());
+			changes++;
+			n = to.findSuccessor(n);
+		}
+		return changes;
+	}
+
+	/**
+	 * private static int countRange(AVLTree tree, long lo, long hi)
+	 * returns the number of items with lo <= key <= hi
+	 * Complexity: O(logn)
+	 */
+	private static int countRange(AVLTree tree, long lo, long hi) {
+		int below = (lo == Integer.MIN_VALUE) ? 0 : tree.rank((int) lo - 1);
+		return tree.rank((int) hi) - below;
+	}
+
+	/**
+	 * private static long itemHash(int key, String info)
+	 * mixes a key and the 64 bit hash of its info (the splitmix64 finalizer)
+	 * Complexity: O(length of info)
+	 */
+	private static long itemHash(int key, String info) {
+		long h = infoHash(info) + key * 0x9e3779b97f4a7c15L;
+		h = (h ^ (h >>> 30)) * 0xbf58476d1ce4e5b9L;
+		h = (h ^ (h >>> 27)) * 0x94d049bb133111ebL;
+		return h ^ (h >>> 31);
+	}
+
+	/**
+	 * private static long infoHash(String info)
+	 * returns the 64 bit FNV-1a hash of the info's chars, a fixed value for null
+	 * Complexity: O(length of info)
+	 */
+	private static long infoHash(String info) {
+		if (info == null) return 0x5bd1e9955bd1e995L;
+		long h = 0xcbf29ce484222325L;
+		for (int j = 0; j < info.length(); j++) {
+			char c = info.charAt(j);
+			h = (h ^ (c & 0xff)) * 0x100000001b3L;
+			h = (h ^ (c >>> 8)) * 0x100000001b3L;
+		}
+		return h;
+	}
+
+	/**
+	 * private static boolean equal(String a, String b)
+	 * returns true if both are null or equal
+	 * Complexity: O(length)
+	 */
+	private static boolean equal(String a, String b) {
+		return (a == null) ? b == null : a.equals(b);
+	}
+
+	/**
+	 * public interface Listener
+	 * receives the changes of diff in key order
+	 */
+	public interface Listener {
+		public void onAdded(int key, String info); // key is only in the second tree
+		public void onRemoved(int key, String info); // key is only in the first tree
+		public void onChanged(int key, String oldInfo, String newInfo); // key is in both with different info
+	}
+
+	/**
+	 * private static class ChangeList
+	 * collects the changes of a diff into growing arrays
+	 */
+	private static class ChangeList implements Listener {
+		private static final byte ADDED = 0;
+		private static final byte REMOVED = 1;
+		private static final byte CHANGED = 2;
+
+		private byte[] kinds = new byte[16];
+		private int[] keys = new int[16];
+		private String[] infos = new String[16];
+		private int length = 0;
+
+		public void onAdded(int key, String info) {
+			add(ADDED, key, info);
+		}
+
+		public void onRemoved(int key, String info) {
+			add(REMOVED, key, null);
+		}
+
+		public void onChanged(int key, String oldInfo, String newInfo) {
+			add(CHANGED, key, newInfo);
+		}
+
+		private void add(byte kind, int key, String info) {
+			if (this.length == this.keys.length) {
+				this.kinds = java.util.Arrays.copyOf(this.kinds, this.length * 2);
+				this.keys = java.util.Arrays.copyOf(this.keys, this.length * 2);
+				this.infos = java.util.Arrays.copyOf(this.infos, this.length * 2);
+			}
+			this.kinds[this.length] = kind;
+			this.keys[this.length] = key;
+			this.infos[this.length] = info;
+			this.length++;
+		}
+	}
+}
@@ -0,0 +1,48 @@
+/**
+ *
+ * Tree diff test
+ *
+ * Checks that diff and sync see infos whose String.hashCode collides.
+ * Run with: java TreeDiffTest (exits with status 1 on a failure)
+ *
+ */
+
+public class TreeDiffTest {
+	public static void main(String[] args) {
+		// "Aa" and "BB" have the same String.hashCode
+		AVLTree x = new AVLTree(TreeDiff.HASH);
+		AVLTree y = new AVLTree(TreeDiff.HASH);
+		for (int k = 0; k < 100; k++) {
+			x.insert(k, "v" + k);
+			y.insert(k, "v" + k);
+		}
+		x.delete(5);
+		y.delete(5);
+		x.insert(5, "Aa");
+		y.insert(5, "BB");
+		int[] changed = new int[1];
+		int changes = TreeDiff.diff(x, y, new TreeDiff.Listener() {
+			public void onAdded(int key, String info) {
+			}
+
+			public void onRemoved(int key, String info) {
+			}
+
+			public void onChanged(int key, String oldInfo, String newInfo) {
+				if (key == 5 && "Aa".equals(oldInfo) && "BB".equals(newInfo)) changed[0]++;
+			}
+		});
+		check(changes == 1 && changed[0] == 1, "diff reports the colliding info change");
+		check(TreeDiff.sync(x, y) == 1, "sync changes one key");
+		check("BB".equals(x.search(5)), "sync copies the colliding info");
+		check(TreeDiff.sync(x, y) == 0, "synced trees are equal");
+		System.out.println("TreeDiffTest passed");
+	}
+
+	private static void check(boolean ok, String what) {
+		if (!ok) {
+			System.out.println("TreeDiffTest failed: " + what);
+			System.exit(1);
+		}
+	}
+}
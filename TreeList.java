@@ -2,11 +2,13 @@
  *
  * Tree list
  *
- * An implementation of a Tree list with key and info
+ * An implementation of a Tree list with key and info.
+ * An optional index from key to node finds an item's position by key.
  *
  */
 public class TreeList {
 	private AVLTree avlTree;
+	private IntHashMap<AVLTree.IAVLNode> index;
 
 	/**
 	 * public TreeList()
@@ -17,6 +19,36 @@ public class TreeList {
 		this.avlTree = new AVLTree();
 	}
 
+	/**
+	 * private TreeList(AVLTree avlTree)
+	 * constructor, a list of the items of a tree used by rank.
+	 * Complexity: O(1)
+	 */
+	private TreeList(AVLTree avlTree) {
+		this.avlTree = avlTree;
+	}
+
+	/**
+	 * public void setMetrics(AVLTreeMetrics metrics)
+	 * records the list's operations into metrics (null stops):
+	 * retrieve as treeSelect, insert and delete as insertByRank and deleteByRank.
+	 * nothing is recorded unless the JVM runs with -Davltree.metrics=true
+	 * Complexity: O(1)
+	 */
+	public void setMetrics(AVLTreeMetrics metrics) {
+		this.avlTree.setMetrics(metrics);
+	}
+
+	/**
+	 * public void setChangeFeed(ChangeFeed changeFeed)
+	 * publishes every successful insert and delete to changeFeed (null stops),
+	 * as INSERT_BY_RANK and DELETE_BY_RANK events with the item's position
+	 * Complexity: O(1)
+	 */
+	public void setChangeFeed(ChangeFeed changeFeed) {
+		this.avlTree.setChangeFeed(changeFeed);
+	}
+
 	/**
 	 * public Item retrieve(int i)
 	 * returns the item in the ith position if it exists in the list. otherwise,
@@ -33,13 +65,18 @@ public class TreeList {
 	/**
 	 * public int insert(int i, int k, String s)
 	 * inserts an item to the ith position in list with key k and info s. returns -1
-	 * if i<0 or i>n otherwise return 0.
+	 * if i<0 or i>n, or if the list is indexed and has an item with key k,
+	 * otherwise return 0.
 	 * Complexity: O(logn)
 	 */
 	public int insert(int i, int k, String s) {
 		if (i < 0 || i > this.avlTree.size())
 			return -1;
+		if (this.index != null && this.index.containsKey(k))
+			return -1;
 		this.avlTree.insertByRank(i, k, s);
+		if (this.index != null)
+			this.index.put(k, this.avlTree.selectNode(i + 1));
 		return 0;
 	}
 
@@ -52,7 +89,207 @@ public class TreeList {
 	public int delete(int i) {
 		if (i < 0 || i > this.avlTree.size() - 1)
 			return -1;
+		if (this.index != null)
+			this.index.remove(this.avlTree.selectNode(i + 1).getKey());
 		this.avlTree.deleteByRank(i);
 		return 0;
 	}
+
+	/**
+	 * public int enableIndex()
+	 * starts keeping an index from key to node, so that indexOf and
+	 * deleteByKey take O(logn). the keys in the list must be distinct:
+	 * returns -1 (and the list is not indexed) if they are not, otherwise 0.
+	 * while the list is indexed, inserting a key that is in it fails.
+	 * Complexity: O(n)
+	 */
+	public int enableIndex() {
+		if (this.index != null)
+			return 0;
+		this.index = new IntHashMap<>(this.avlTree.size());
+		if (indexAll(this.avlTree) == -1) {
+			this.index = null;
+			return -1;
+		}
+		return 0;
+	}
+
+	/**
+	 * public void disableIndex()
+	 * stops keeping the index
+	 * Complexity: O(1)
+	 */
+	public void disableIndex() {
+		this.index = null;
+	}
+
+	/**
+	 * public int indexOf(int k)
+	 * returns the position of the item with key k, or -1 if there is none.
+	 * without the index the list is scanned (the first such item).
+	 * Complexity: O(logn) with the index, O(n) without
+	 */
+	public int indexOf(int k) {
+		if (this.index != null) {
+			AVLTree.IAVLNode node = this.index.get(k);
+			return (node == null) ? -1 : this.avlTree.rankOfNode(node) - 1;
+		}
+		AVLTree.IAVLNode node = this.avlTree.empty() ? null : this.avlTree.selectNode(1);
+		for (int i = 0; node != null; i++) {
+			if (node.getKey() == k)
+				return i;
+			node = this.avlTree.findSuccessor(node);
+		}
+		return -1;
+	}
+
+	/**
+	 * public int deleteByKey(int k)
+	 * deletes the item with key k. returns -1 if there is none otherwise returns 0.
+	 * Complexity: O(logn) with the index, O(n) without
+	 */
+	public int deleteByKey(int k) {
+		int i = indexOf(k);
+		if (i == -1)
+			return -1;
+		return delete(i);
+	}
+
+	/**
+	 * public int size()
+	 * returns the number of items in the list
+	 * Complexity: O(1)
+	 */
+	public int size() {
+		return this.avlTree.size();
+	}
+
+	/**
+	 * public TreeList subList(int from, int to)
+	 * returns a new list with copies of the items in positions from..to-1,
+	 * this list is not changed. returns null if from<0, to>n or from>to.
+	 * Complexity: O(logn + (to - from))
+	 */
+	public TreeList subList(int from, int to) {
+		if (from < 0 || to > this.avlTree.size() || from > to)
+			return null;
+		int[] keys = new int[to - from];
+		String[] infos = new String[to - from];
+		AVLTree.IAVLNode node = (from == to) ? null : this.avlTree.selectNode(from + 1);
+		for (int j = 0; j < keys.length; j++) {
+			keys[j] = node.getKey();
+			infos[j] = node.getValue();
+			node = this.avlTree.findSuccessor(node);
+		}
+		return new TreeList(new AVLTree(keys, infos));
+	}
+
+	/**
+	 * public TreeList cut(int from, int to)
+	 * removes the items in positions from..to-1 and returns them as a new list.
+	 * returns null if from<0, to>n or from>to.
+	 * the change feed gets a DELETE_BY_RANK event for every removed item.
+	 * the returned list is not indexed and has no change feed.
+	 * Complexity: O(logn), plus O(to - from) if this list is indexed or has a change feed
+	 */
+	public TreeList cut(int from, int to) {
+		if (from < 0 || to > this.avlTree.size() || from > to)
+			return null;
+		// the moves inside the tree are not changes of the list, the feed only gets the removed items
+		ChangeFeed feed = this.avlTree.getChangeFeed();
+		this.avlTree.setChangeFeed(null);
+		AVLTree rest = this.avlTree.splitByRank(from);
+		AVLTree tail = rest.splitByRank(to - from);
+		this.avlTree.concat(tail);
+		this.avlTree.setChangeFeed(feed);
+		if (this.index != null)
+			unindexAll(rest, null);
+		if (feed != null)
+			rest.publishItems(feed, ChangeFeed.DELETE_BY_RANK, 0, rest.size(), from, 0);
+		return new TreeList(rest);
+	}
+
+	/**
+	 * public int paste(int i, TreeList other)
+	 * moves all of other's items into this list, the first of them to the ith
+	 * position, and leaves other empty. returns -1 if i<0 or i>n, if other is
+	 * this list, or if this list is indexed and a key would repeat (nothing
+	 * is moved in these cases), otherwise returns 0.
+	 * this list's change feed gets an INSERT_BY_RANK event and other's change
+	 * feed a DELETE_BY_RANK event for every moved item.
+	 * Complexity: O(logn + log(other's size)), plus O(other's size) if this list is indexed or a change feed is set
+	 */
+	public int paste(int i, TreeList other) {
+		if (i < 0 || i > this.avlTree.size() || other == this)
+			return -1;
+		if (this.index != null && indexAll(other.avlTree) == -1)
+			return -1;
+		if (other.index != null)
+			other.index.clear();
+		int moved = other.avlTree.size();
+		ChangeFeed feed = this.avlTree.getChangeFeed();
+		this.avlTree.setChangeFeed(null);
+		AVLTree tail = this.avlTree.splitByRank(i);
+		this.avlTree.concat(other.avlTree);
+		this.avlTree.concat(tail);
+		this.avlTree.setChangeFeed(feed);
+		if (feed != null)
+			this.avlTree.publishItems(feed, ChangeFeed.INSERT_BY_RANK, i, moved, i, 1);
+		return 0;
+	}
+
+	/**
+	 * public int insertAll(int i, Item[] items)
+	 * inserts the items in order, the first of them to the ith position.
+	 * returns -1 if i<0 or i>n, or if this list is indexed and a key
+	 * would repeat, otherwise returns 0.
+	 * the items are built into a balanced tree and pasted in.
+	 * the change feed gets an INSERT_BY_RANK event for every inserted item.
+	 * Complexity: O(logn + number of items)
+	 */
+	public int insertAll(int i, Item[] items) {
+		if (i < 0 || i > this.avlTree.size())
+			return -1;
+		int[] keys = new int[items.length];
+		String[] infos = new String[items.length];
+		for (int j = 0; j < items.length; j++) {
+			keys[j] = items[j].getKey();
+			infos[j] = items[j].getInfo();
+		}
+		return paste(i, new TreeList(new AVLTree(keys, infos)));
+	}
+
+	/**
+	 * private int indexAll(AVLTree tree)
+	 * adds the nodes of tree to the index. if a key is already indexed,
+	 * the nodes that were added are removed again and -1 is returned,
+	 * otherwise returns 0.
+	 * Complexity: O(size of tree)
+	 */
+	private int indexAll(AVLTree tree) {
+		AVLTree.IAVLNode node = tree.empty() ? null : tree.selectNode(1);
+		while (node != null) {
+			if (this.index.containsKey(node.getKey())) {
+				unindexAll(tree, node);
+				return -1;
+			}
+			this.index.put(node.getKey(), node);
+			node = tree.findSuccessor(node);
+		}
+		return 0;
+	}
+
+	/**
+	 * private void unindexAll(AVLTree tree, AVLTree.IAVLNode stop)
+	 * removes the keys of tree's nodes from the index, up to the node stop
+	 * (not included), or all of them if stop is null
+	 * Complexity: O(size of tree)
+	 */
+	private void unindexAll(AVLTree tree, AVLTree.IAVLNode stop) {
+		AVLTree.IAVLNode node = tree.empty() ? null : tree.selectNode(1);
+		while (node != null && node != stop) {
+			this.index.remove(node.getKey());
+			node = tree.findSuccessor(node);
+		}
+	}
 }
@@ -0,0 +1,275 @@
+import java.nio.charset.StandardCharsets;
+
+/**
+ *
+ * Value arena
+ *
+ * A store of deduplicated strings as UTF-8 bytes in one shared byte array.
+ * intern returns an int handle, equal strings get the same handle, and every
+ * handle counts its references. A value whose count drops to 0 is freed, and
+ * when at least half of the array is freed bytes, the live values are copied
+ * together (handles do not change). get makes a new String from the bytes,
+ * so strings only exist while they are used.
+ * The arena is not thread safe: all the trees that share it must be used
+ * from one thread at a time, or synchronized externally.
+ *
+ */
+
+public class ValueArena {
+	private static final int MIN_COMPACT = 4096;
+
+	private byte[] bytes;
+	private int used;
+	private int garbage;
+	// per handle: its bytes, its references (0 if the handle is free) and its hash
+	private int[] offsets;
+	private int[] lengths;
+	private int[] refs;
+	private int[] hashes;
+	private int handles;
+	private int freeHead;
+	private int live;
+	// open addressing from a value's hash to its handle + 1 (0 is an empty slot)
+	private int[] table;
+	private int mask;
+	private Slots slots;
+
+	/**
+	 * public ValueArena()
+	 * constructor.
+	 * Complexity: O(1)
+	 */
+	public ValueArena() {
+		this.bytes = new byte[1024];
+		this.used = 0;
+		this.garbage = 0;
+		this.offsets = new int[64];
+		this.lengths = new int[64];
+		this.refs = new int[64];
+		this.hashes = new int[64];
+		this.handles = 0;
+		this.freeHead = -1;
+		this.live = 0;
+		this.table = new int[128];
+		this.mask = 127;
+		this.slots = new Slots();
+	}
+
+	/**
+	 * public int intern(String s)
+	 * returns the handle of s, adding a reference to it,
+	 * or -1 if s is null (get(-1) is null)
+	 * Complexity: O(length of s) expected
+	 */
+	public int intern(String s) {
+		if (s == null) return -1;
+		byte[] b = s.getBytes(StandardCharsets.UTF_8);
+		int h = hash(b);
+		int slot = h & this.mask;
+		while (this.table[slot] != 0) {
+			int e = this.table[slot] - 1;
+			if (this.hashes[e] == h && sameBytes(e, b)) {
+				this.refs[e]++;
+				return e;
+			}
+			slot = (slot + 1) & this.mask;
+		}
+		int e = newHandle();
+		if (this.used + b.length > this.bytes.length) {
+			this.bytes = java.util.Arrays.copyOf(this.bytes, Math.max(this.bytes.length * 2, this.used + b.length));
+		}
+		System.arraycopy(b, 0, this.bytes, this.used, b.length);
+		this.offsets[e] = this.used;
+		this.lengths[e] = b.length;
+		this.refs[e] = 1;
+		this.hashes[e] = h;
+		this.used += b.length;
+		this.live++;
+		this.table[slot] = e + 1;
+		if (2 * this.live > this.table.length) growTable();
+		return e;
+	}
+
+	/**
+	 * public void retain(int handle)
+	 * adds a reference to a handle (-1 is ignored)
+	 * @pre the handle is live
+	 * Complexity: O(1)
+	 */
+	public void retain(int handle) {
+		if (handle >= 0) this.refs[handle]++;
+	}
+
+	/**
+	 * public void release(int handle)
+	 * removes a reference from a handle (-1 is ignored). the value is freed
+	 * when its last reference is removed.
+	 * @pre the handle is live
+	 * Complexity: O(1) amortized
+	 */
+	public void release(int handle) {
+		if (handle < 0 || --this.refs[handle] > 0) return;
+		removeFromTable(handle);
+		this.garbage += this.lengths[handle];
+		this.lengths[handle] = 0;
+		this.offsets[handle] = this.freeHead;
+		this.freeHead = handle;
+		this.live--;
+		if (this.garbage >= MIN_COMPACT && 2 * this.garbage >= this.used) compact();
+	}
+
+	/**
+	 * public String get(int handle)
+	 * returns a new String of the handle's value, or null for -1
+	 * @pre the handle is live
+	 * Complexity: O(length)
+	 */
+	public String get(int handle) {
+		if (handle < 0) return null;
+		return new String(this.bytes, this.offsets[handle], this.lengths[handle], StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * public int size()
+	 * returns the number of distinct live values
+	 * Complexity: O(1)
+	 */
+	public int size() {
+		return this.live;
+	}
+
+	/**
+	 * public int byteSize()
+	 * returns the number of bytes of the live values
+	 * Complexity: O(1)
+	 */
+	public int byteSize() {
+		return this.used - this.garbage;
+	}
+
+	/**
+	 * public int capacity()
+	 * returns the size of the byte array, live, freed and unused bytes
+	 * Complexity: O(1)
+	 */
+	public int capacity() {
+		return this.bytes.length;
+	}
+
+	/**
+	 * private int newHandle()
+	 * returns a free handle, reusing freed ones first
+	 * Complexity: O(1) amortized
+	 */
+	private int newHandle() {
+		if (this.freeHead != -1) {
+			int e = this.freeHead;
+			this.freeHead = this.offsets[e];
+			return e;
+		}
+		if (this.handles == this.offsets.length) {
+			int n = this.handles * 2;
+			this.offsets = java.util.Arrays.copyOf(this.offsets, n);
+			this.lengths = java.util.Arrays.copyOf(this.lengths, n);
+			this.refs = java.util.Arrays.copyOf(this.refs, n);
+			this.hashes = java.util.Arrays.copyOf(this.hashes, n);
+		}
+		return this.handles++;
+	}
+
+	/**
+	 * private void compact()
+	 * copies the live values to a new array without the freed bytes
+	 * Complexity: O(handles + live bytes)
+	 */
+	private void compact() {
+		int size = this.used - this.garbage;
+		byte[] compacted = new byte[Math.max(1024, size * 2)];
+		int at = 0;
+		for (int e = 0; e < this.handles; e++) {
+			if (this.refs[e] == 0) continue;
+			System.arraycopy(this.bytes, this.offsets[e], compacted, at, this.lengths[e]);
+			this.offsets[e] = at;
+			at += this.lengths[e];
+		}
+		this.bytes = compacted;
+		this.used = at;
+		this.garbage = 0;
+	}
+
+	/**
+	 * private void removeFromTable(int e)
+	 * removes a handle from the hash table, shifting back the following
+	 * entries of its probe run that would not be found past the hole
+	 * Complexity: O(1) expected
+	 */
+	private void removeFromTable(int e) {
+		int slot = this.hashes[e] & this.mask;
+		while (this.table[slot] != e + 1) slot = (slot + 1) & this.mask;
+		OpenAddressing.removeSlot(this.slots, this.mask, slot);
+	}
+
+	/**
+	 * private void growTable()
+	 * doubles the hash table and reinserts the live handles
+	 * Complexity: O(handles)
+	 */
+	private void growTable() {
+		this.table = new int[this.table.length * 2];
+		this.mask = this.table.length - 1;
+		for (int e = 0; e < this.handles; e++) {
+			if (this.refs[e] == 0) continue;
+			int slot = this.hashes[e] & this.mask;
+			while (this.table[slot] != 0) slot = (slot + 1) & this.mask;
+			this.table[slot] = e + 1;
+		}
+	}
+
+	/**
+	 * private boolean sameBytes(int e, byte[] b)
+	 * returns true if the handle's value is b
+	 * Complexity: O(length)
+	 */
+	private boolean sameBytes(int e, byte[] b) {
+		if (this.lengths[e] != b.length) return false;
+		int offset = this.offsets[e];
+		for (int j = 0; j < b.length; j++) {
+			if (this.bytes[offset + j] != b[j]) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * private static int hash(byte[] b)
+	 * returns a mixed hash of the bytes
+	 * Complexity: O(length)
+	 */
+	private static int hash(byte[] b) {
+		int h = 1;
+		for (int j = 0; j < b.length; j++) h = 31 * h + b[j];
+		h *= 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * private class Slots
+	 * the hash table, for OpenAddressing.removeSlot
+	 */
+	private class Slots implements OpenAddressing.Table {
+		public boolean occupied(int slot) {
+			return table[slot] != 0;
+		}
+
+		public int home(int slot) {
+			return hashes[table[slot] - 1] & mask;
+		}
+
+		public void move(int from, int to) {
+			table[to] = table[from];
+		}
+
+		public void clear(int slot) {
+			table[slot] = 0;
+		}
+	}
+}
@@ -0,0 +1,127 @@
+/**
+ *
+ * Windowed percentile
+ *
+ * Order statistics over the samples of the last windowLength time units.
+ * The samples are kept sorted in a size augmented LongAVLTree, keyed by
+ * (value, sequence number) so equal values are distinct keys, and in
+ * arrival order in a circular time queue (like CircularList, but growing)
+ * from which expired samples are evicted in batches.
+ *
+ */
+
+public class WindowedPercentile {
+	private long windowLength;
+	private LongAVLTree tree;
+	// time queue: timestamp and tree key of every sample, in arrival order
+	private long[] times;
+	private long[] keys;
+	private int start;
+	private int length;
+	private int seq;
+
+	/**
+	 * public WindowedPercentile(long windowLength, int initialCapacity)
+	 * constructor. samples with timestamp <= now - windowLength are expired.
+	 * initialCapacity is the expected number of samples in a window,
+	 * the time queue grows if it is exceeded.
+	 * Complexity: O(initialCapacity)
+	 */
+	public WindowedPercentile(long windowLength, int initialCapacity) {
+		this.windowLength = windowLength;
+		this.tree = new LongAVLTree();
+		int capacity = Math.max(initialCapacity, 16);
+		this.times = new long[capacity];
+		this.keys = new long[capacity];
+		this.start = 0;
+		this.length = 0;
+		this.seq = 0;
+	}
+
+	/**
+	 * public int size()
+	 * returns the number of samples in the window
+	 * Complexity: O(1)
+	 */
+	public int size() {
+		return this.length;
+	}
+
+	/**
+	 * public void add(long timestamp, int value)
+	 * adds a sample, first evicting the samples that expired by timestamp.
+	 * @pre timestamps are added in non decreasing order
+	 * Complexity: O(logn) amortized
+	 */
+	public void add(long timestamp, int value) {
+		evict(timestamp);
+		if (this.length == this.times.length) grow();
+		// the sequence number wraps, keys stay distinct as long as
+		// a window holds less than 2^32 samples
+		long key = CompositeKeyAVLTree.pack(value, this.seq++);
+		this.tree.insert(key, null);
+		int index = (this.start + this.length) % this.times.length;
+		this.times[index] = timestamp;
+		this.keys[index] = key;
+		this.length++;
+	}
+
+	/**
+	 * public int evict(long now)
+	 * removes all the samples with timestamp <= now - windowLength.
+	 * returns the number of removed samples.
+	 * Complexity: O(k logn) for k removed samples
+	 */
+	public int evict(long now) {
+		long expiredBefore = now - this.windowLength;
+		int removed = 0;
+		while (this.length > 0 && this.times[this.start] <= expiredBefore) {
+			this.tree.delete(this.keys[this.start]);
+			this.start = (this.start + 1) % this.times.length;
+			this.length--;
+			removed++;
+		}
+		return removed;
+	}
+
+	/**
+	 * public int quantile(double q)
+	 * returns the q-quantile (0 <= q <= 1) of the samples in the window,
+	 * the sample with rank ceil(q*n) (nearest rank), or -1 if the window is empty.
+	 * quantile(0.5) is the median, quantile(0.99) is p99.
+	 * Complexity: O(logn)
+	 */
+	public int quantile(double q) {
+		if (this.length == 0) return -1;
+		int rank = (int) Math.ceil(q * this.length);
+		rank = Math.max(1, Math.min(this.length, rank));
+		return CompositeKeyAVLTree.high(this.tree.treeSelect(rank).getKey());
+	}
+
+	/**
+	 * public int countAtMost(int value)
+	 * returns the number of samples in the window that are <= value
+	 * Complexity: O(logn)
+	 */
+	public int countAtMost(int value) {
+		return this.tree.rank(CompositeKeyAVLTree.pack(value, Integer.MAX_VALUE));
+	}
+
+	/**
+	 * private void grow()
+	 * doubles the capacity of the time queue, keeping the arrival order
+	 * Complexity: O(n)
+	 */
+	private void grow() {
+		int capacity = this.times.length;
+		long[] newTimes = new long[capacity * 2];
+		long[] newKeys = new long[capacity * 2];
+		for (int j = 0; j < this.length; j++) {
+			newTimes[j] = this.times[(this.start + j) % capacity];
+			newKeys[j] = this.keys[(this.start + j) % capacity];
+		}
+		this.times = newTimes;
+		this.keys = newKeys;
+		this.start = 0;
+	}
+}